@@ -0,0 +1,156 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory;
+import io.r2dbc.examples.agent.R2dbcProxyAgent;
+import io.r2dbc.proxy.callback.ConnectionFactoryCallbackHandler;
+import io.r2dbc.proxy.callback.ProxyConfig;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.bind.annotation.AllArguments;
+import net.bytebuddy.implementation.bind.annotation.Origin;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import net.bytebuddy.implementation.bind.annotation.This;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static net.bytebuddy.implementation.MethodDelegation.to;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * Benchmark for {@link ConnectionFactory} methods instrumented by {@code R2dbcProxyAgent}.
+ * <p>
+ * Instead of attaching the agent, the same instrumentation is applied to a subclass of
+ * {@link StubConnectionFactory}.
+ * <ul>
+ *     <li>{@code per-call-handler} : creates a callback handler on every call(previous implementation)
+ *     <li>{@code cached-handler} : {@link R2dbcProxyAgent#instrumentConnectionFactory}
+ *     <li>{@code advice} : {@link R2dbcProxyAgent#adviceConnectionFactory}. Since advice is applied to
+ *     declared methods, {@link StubConnectionFactory} is redefined and loaded child-first.
+ * </ul>
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentInterceptorBenchmark {
+
+	@Param({"per-call-handler", "cached-handler", "advice"})
+	private String interceptor;
+
+	private ConnectionFactory connectionFactory;
+
+	@Setup
+	public void setup() throws Exception {
+		// do not print out interactions
+		R2dbcProxyAgent.setProxyConfig(ProxyConfig.builder()
+				.listener(new ProxyExecutionListener() {
+				})
+				.proxyFactoryFactory(ByteBuddyProxyFactory::new)
+				.build());
+
+		Class<?> type;
+		switch (this.interceptor) {
+			case "per-call-handler":
+				type = new ByteBuddy()
+						.subclass(StubConnectionFactory.class)
+						.method(named("create").or(named("getMetadata")))
+						.intercept(to(PerCallHandlerInterceptor.class))
+						.make()
+						.load(StubConnectionFactory.class.getClassLoader())
+						.getLoaded();
+				break;
+			case "cached-handler":
+				type = R2dbcProxyAgent.instrumentConnectionFactory(new ByteBuddy().subclass(StubConnectionFactory.class))
+						.make()
+						.load(StubConnectionFactory.class.getClassLoader())
+						.getLoaded();
+				break;
+			case "advice":
+				type = R2dbcProxyAgent.adviceConnectionFactory(new ByteBuddy().redefine(StubConnectionFactory.class))
+						.make()
+						.load(StubConnectionFactory.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+						.getLoaded();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown interceptor: " + this.interceptor);
+		}
+		this.connectionFactory = (ConnectionFactory) type.getDeclaredConstructor(int.class).newInstance(1);
+	}
+
+	/**
+	 * Acquire a connection.
+	 */
+	@Benchmark
+	public void create(Blackhole blackhole) {
+		Flux.from(this.connectionFactory.create()).subscribe(blackhole::consume);
+	}
+
+	@Benchmark
+	public ConnectionFactoryMetadata getMetadata() {
+		return this.connectionFactory.getMetadata();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(AgentInterceptorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * Interceptor that creates a callback handler and an invocation strategy per call.
+	 */
+	@SuppressWarnings("unchecked")
+	public static class PerCallHandlerInterceptor {
+
+		@RuntimeType
+		public static Object intercept(@AllArguments Object[] args,
+				@This ConnectionFactory connectionFactory, @Origin Method method,
+				@SuperCall Callable<?> callable) throws Throwable {
+
+			ConnectionFactoryCallbackHandler handler = new ConnectionFactoryCallbackHandler(connectionFactory, R2dbcProxyAgent.getProxyConfig());
+			handler.setMethodInvocationStrategy((invokedMethod, invokedTarget, invokedArgs) -> {
+				return callable.call();
+			});
+
+			Object result = handler.invoke("", method, args);
+			if (Mono.class.equals(method.getReturnType())) {
+				return Mono.from((Publisher<? extends Connection>) result);
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package io.r2dbc.examples.benchmark;
+
+import brave.Tracing;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.examples.CachingQueryTypeDetector;
+import io.r2dbc.examples.CompositeExecutionListener;
+import io.r2dbc.examples.MetricsExecutionListener;
+import io.r2dbc.examples.QueryFingerprintMetricsExecutionListener;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener;
+import io.r2dbc.examples.TracingExecutionListener;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.support.QueryExecutionInfoFormatter;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import zipkin2.reporter.Reporter;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Benchmark for dispatching callbacks to the listeners registered in {@code Application}
+ * of listener-example.
+ * <p>
+ * {@code individual} registers each listener to r2dbc-proxy, and {@code composite} registers
+ * them through {@link CompositeExecutionListener}. Spans are sampled and discarded, and the
+ * {@code onAfterQuery} callback formats the query without printing it.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeExecutionListenerBenchmark {
+
+	private static final String QUERY = "SELECT id, name FROM test WHERE id = $1";
+
+	@Param({"individual", "composite"})
+	private String registration;
+
+	private Tracing tracing;
+
+	private Connection connection;
+
+	@Setup
+	public void setup() {
+		this.tracing = Tracing.newBuilder()
+				.sampler(Sampler.ALWAYS_SAMPLE)
+				.spanReporter(Reporter.NOOP)
+				.build();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+		// same listeners as "Application#connectionFactory"
+		TracingExecutionListener tracingListener = new TracingExecutionListener(this.tracing.tracer());
+		MetricsExecutionListener metricsListener = new MetricsExecutionListener(meterRegistry, Duration.ofMillis(500));
+		QueryTimeMetricsExecutionListener queryTimeListener = new QueryTimeMetricsExecutionListener(meterRegistry);
+		queryTimeListener.setQueryTypeDetector(new CachingQueryTypeDetector());
+		QueryFingerprintMetricsExecutionListener fingerprintListener = new QueryFingerprintMetricsExecutionListener(meterRegistry);
+		QueryExecutionInfoFormatter queryFormatter = QueryExecutionInfoFormatter.showAll();
+		Consumer<QueryExecutionInfo> onAfterQuery = queryInfo -> queryFormatter.format(queryInfo);
+
+		ProxyConnectionFactory.Builder builder = ProxyConnectionFactory.builder(new StubConnectionFactory(1));
+		switch (this.registration) {
+			case "individual":
+				builder.listener(tracingListener)
+						.listener(metricsListener)
+						.listener(queryTimeListener)
+						.listener(fingerprintListener)
+						.onAfterQuery(onAfterQuery);
+				break;
+			case "composite":
+				builder.listener(CompositeExecutionListener.builder()
+						.listener(tracingListener)
+						.listener(metricsListener)
+						.listener(queryTimeListener)
+						.listener(fingerprintListener)
+						.onAfterQuery(onAfterQuery)
+						.build());
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown registration: " + this.registration);
+		}
+		ConnectionFactory connectionFactory = builder.build();
+
+		this.connection = Mono.from(connectionFactory.create()).block();
+	}
+
+	@TearDown
+	public void tearDown() {
+		Mono.from(this.connection.close()).block();
+		this.tracing.close();
+	}
+
+	/**
+	 * Create a statement, bind a parameter, execute it, and map the result.
+	 */
+	@Benchmark
+	public void query(Blackhole blackhole) {
+		Flux.from(this.connection.createStatement(QUERY).bind(0, 100).execute())
+				.flatMap(result -> result.map((row, rowMetadata) -> row))
+				.subscribe(blackhole::consume);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(CompositeExecutionListenerBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
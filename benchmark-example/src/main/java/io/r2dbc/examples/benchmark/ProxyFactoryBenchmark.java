@@ -0,0 +1,137 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.examples.SpringAopProxyFactory;
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory;
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory.DispatchMode;
+import io.r2dbc.proxy.ProxyConnectionFactory;
+import io.r2dbc.proxy.callback.ProxyConfig;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for per-invocation overhead of r2dbc-proxy with each
+ * {@link io.r2dbc.proxy.callback.ProxyFactory} implementation.
+ * <p>
+ * Proxies wrap stub SPI implementations, and a listener that does nothing is registered,
+ * so that the measured time is the proxy mechanism and r2dbc-proxy callback logic.
+ * <p>
+ * {@link #main(String[])} runs with the GC profiler to report allocation per operation.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyFactoryBenchmark {
+
+	private static final String QUERY = "SELECT id, name FROM test WHERE id = $1";
+
+	@Param({"jdk", "spring-aop", "spring-aop-precomputed", "spring-aop-exclude-bind", "bytebuddy", "bytebuddy-direct-bind"})
+	private String proxyFactory;
+
+	private Connection connection;
+
+	private Statement statement;
+
+	private Result result;
+
+	@Setup
+	public void setup() {
+		ProxyConfig proxyConfig = new ProxyConfig();
+		switch (this.proxyFactory) {
+			case "jdk":
+				break;  // default uses jdk dynamic proxy
+			case "spring-aop":
+				proxyConfig.setProxyFactoryFactory(SpringAopProxyFactory::new);
+				break;
+			case "spring-aop-precomputed":
+				proxyConfig.setProxyFactoryFactory(config -> {
+					SpringAopProxyFactory factory = new SpringAopProxyFactory(config);
+					factory.setPrecomputeProxyConfiguration(true);
+					return factory;
+				});
+				break;
+			case "spring-aop-exclude-bind":
+				proxyConfig.setProxyFactoryFactory(config -> {
+					SpringAopProxyFactory factory = new SpringAopProxyFactory(config);
+					factory.setPrecomputeProxyConfiguration(true);
+					factory.setInterceptedMethodMatcher(SpringAopProxyFactory.EXCLUDE_BIND_METHODS);
+					return factory;
+				});
+				break;
+			case "bytebuddy":
+				proxyConfig.setProxyFactoryFactory(ByteBuddyProxyFactory::new);
+				break;
+			case "bytebuddy-direct-bind":
+				proxyConfig.setProxyFactoryFactory(config -> new ByteBuddyProxyFactory(config, DispatchMode.DIRECT_BIND));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown proxy factory: " + this.proxyFactory);
+		}
+
+		ConnectionFactory connectionFactory = ProxyConnectionFactory.builder(new StubConnectionFactory(1), proxyConfig)
+				.listener(new ProxyExecutionListener() {
+				})
+				.build();
+
+		this.connection = Mono.from(connectionFactory.create()).block();
+		this.statement = this.connection.createStatement(QUERY);
+		this.result = Mono.from(this.statement.execute()).block();
+	}
+
+	@Benchmark
+	public Statement createStatement() {
+		return this.connection.createStatement(QUERY);
+	}
+
+	@Benchmark
+	public Statement bind() {
+		return this.statement.bind(0, 100);
+	}
+
+	@Benchmark
+	public void execute(Blackhole blackhole) {
+		Flux.from(this.statement.execute()).subscribe(blackhole::consume);
+	}
+
+	@Benchmark
+	public void map(Blackhole blackhole) {
+		Flux.from(this.result.map((row, rowMetadata) -> row)).subscribe(blackhole::consume);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(ProxyFactoryBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
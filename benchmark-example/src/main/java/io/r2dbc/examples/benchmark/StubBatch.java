@@ -0,0 +1,31 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Result;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link Batch} that returns a {@link StubResult}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StubBatch implements Batch {
+
+	private final int rowCount;
+
+	public StubBatch(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	@Override
+	public Batch add(String sql) {
+		return this;
+	}
+
+	@Override
+	public Publisher<? extends Result> execute() {
+		return Mono.just(new StubResult(this.rowCount));
+	}
+
+}
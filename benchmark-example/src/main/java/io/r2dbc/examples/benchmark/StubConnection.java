@@ -0,0 +1,114 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionMetadata;
+import io.r2dbc.spi.IsolationLevel;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.ValidationDepth;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link Connection} that creates stub statements and completes all other operations immediately.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StubConnection implements Connection {
+
+	private final int rowCount;
+
+	private boolean autoCommit = true;
+
+	private IsolationLevel isolationLevel = IsolationLevel.READ_COMMITTED;
+
+	public StubConnection(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	@Override
+	public Publisher<Void> beginTransaction() {
+		return Mono.empty();
+	}
+
+	@Override
+	public Publisher<Void> close() {
+		return Mono.empty();
+	}
+
+	@Override
+	public Publisher<Void> commitTransaction() {
+		return Mono.empty();
+	}
+
+	@Override
+	public Batch createBatch() {
+		return new StubBatch(this.rowCount);
+	}
+
+	@Override
+	public Publisher<Void> createSavepoint(String name) {
+		return Mono.empty();
+	}
+
+	@Override
+	public Statement createStatement(String sql) {
+		return new StubStatement(this.rowCount);
+	}
+
+	@Override
+	public boolean isAutoCommit() {
+		return this.autoCommit;
+	}
+
+	@Override
+	public ConnectionMetadata getMetadata() {
+		return new ConnectionMetadata() {
+			@Override
+			public String getDatabaseProductName() {
+				return "stub";
+			}
+
+			@Override
+			public String getDatabaseVersion() {
+				return "1.0";
+			}
+		};
+	}
+
+	@Override
+	public IsolationLevel getTransactionIsolationLevel() {
+		return this.isolationLevel;
+	}
+
+	@Override
+	public Publisher<Void> releaseSavepoint(String name) {
+		return Mono.empty();
+	}
+
+	@Override
+	public Publisher<Void> rollbackTransaction() {
+		return Mono.empty();
+	}
+
+	@Override
+	public Publisher<Void> rollbackTransactionToSavepoint(String name) {
+		return Mono.empty();
+	}
+
+	@Override
+	public Publisher<Void> setAutoCommit(boolean autoCommit) {
+		return Mono.fromRunnable(() -> this.autoCommit = autoCommit);
+	}
+
+	@Override
+	public Publisher<Void> setTransactionIsolationLevel(IsolationLevel isolationLevel) {
+		return Mono.fromRunnable(() -> this.isolationLevel = isolationLevel);
+	}
+
+	@Override
+	public Publisher<Boolean> validate(ValidationDepth depth) {
+		return Mono.just(true);
+	}
+
+}
@@ -0,0 +1,38 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ConnectionFactory} that returns {@link StubConnection} without any I/O.
+ * <p>
+ * Benchmarks use stubs, so that measured time is the overhead of proxies rather than
+ * the database.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StubConnectionFactory implements ConnectionFactory {
+
+	private final int rowCount;
+
+	/**
+	 * @param rowCount number of rows returned by each query result
+	 */
+	public StubConnectionFactory(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	@Override
+	public Publisher<? extends Connection> create() {
+		return Mono.just(new StubConnection(this.rowCount));
+	}
+
+	@Override
+	public ConnectionFactoryMetadata getMetadata() {
+		return () -> "stub";
+	}
+
+}
@@ -0,0 +1,56 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.BiFunction;
+
+/**
+ * {@link Result} that emits the same {@link Row} for the given number of times.
+ * <p>
+ * Row metadata is not provided. Mapping functions receive {@code null} for it.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StubResult implements Result {
+
+	private static final Row ROW = new StubRow();
+
+	private final int rowCount;
+
+	public StubResult(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	@Override
+	public Publisher<Integer> getRowsUpdated() {
+		return Mono.just(this.rowCount);
+	}
+
+	@Override
+	public <T> Publisher<T> map(BiFunction<Row, RowMetadata, ? extends T> mappingFunction) {
+		return Flux.range(0, this.rowCount).map(i -> mappingFunction.apply(ROW, null));
+	}
+
+	/**
+	 * {@link Row} that returns {@code null} for any column.
+	 */
+	private static class StubRow implements Row {
+
+		@Override
+		public <T> T get(int index, Class<T> type) {
+			return null;
+		}
+
+		@Override
+		public <T> T get(String name, Class<T> type) {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,51 @@
+package io.r2dbc.examples.benchmark;
+
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link Statement} that ignores bindings and returns a {@link StubResult}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class StubStatement implements Statement {
+
+	private final int rowCount;
+
+	public StubStatement(int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	@Override
+	public Statement add() {
+		return this;
+	}
+
+	@Override
+	public Statement bind(int index, Object value) {
+		return this;
+	}
+
+	@Override
+	public Statement bind(String name, Object value) {
+		return this;
+	}
+
+	@Override
+	public Statement bindNull(int index, Class<?> type) {
+		return this;
+	}
+
+	@Override
+	public Statement bindNull(String name, Class<?> type) {
+		return this;
+	}
+
+	@Override
+	public Publisher<? extends Result> execute() {
+		return Mono.just(new StubResult(this.rowCount));
+	}
+
+}
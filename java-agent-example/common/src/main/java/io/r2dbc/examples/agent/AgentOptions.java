@@ -0,0 +1,248 @@
+package io.r2dbc.examples.agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options for {@link R2dbcProxyAgent}.
+ *
+ * Options are given as the agent argument in {@code key=value} format separated by comma.
+ * e.g. {@code -javaagent:agent.jar=mode=metrics,sample=0.01,slowMs=200,sink=file:/var/log/r2dbc.log}
+ *
+ * <ul>
+ *     <li>{@code instrumentation} : {@code delegation}(default) or {@code advice}. See {@link InstrumentationMode}.
+ *     <li>{@code driverPackages} : packages of {@code ConnectionFactory} implementations to instrument,
+ *     separated by colon. e.g. {@code io.r2dbc.h2:io.r2dbc.postgresql}
+ *     <li>{@code typePattern} : regular expression for class names of {@code ConnectionFactory}
+ *     implementations to instrument
+ *     <li>{@code statistics} : {@code true}(default) to print instrumentation statistics at shutdown
+ *     <li>{@code mode} : {@code log}(default), {@code query}, {@code slow} or {@code metrics}.
+ *     Selects the installed listener. See {@link ListenerMode}.
+ *     <li>{@code sample} : ratio of method calls and queries to output, between {@code 0} and {@code 1}(default).
+ *     Not applied to {@code metrics} mode.
+ *     <li>{@code slowMs} : only queries that took this or longer are output. {@code 1000} for {@code slow} mode,
+ *     otherwise {@code 0} by default. In {@code metrics} mode, queries over this threshold are counted as slow.
+ *     <li>{@code sink} : {@code stdout}(default), {@code stderr}, {@code file:<path>} or {@code binary:<path>}.
+ *     {@code binary} writes records to a ring file by {@link BinaryEventSink}, and is not available for {@code metrics} mode.
+ *     <li>{@code ringSize} : number of records kept in the ring file of {@code binary} sink. {@code 1048576} by default
+ *     <li>{@code summaryIntervalSec} : interval of the summary in {@code metrics} mode. {@code 60} by default
+ * </ul>
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class AgentOptions {
+
+	public static final String INSTRUMENTATION = "instrumentation";
+
+	public static final String DRIVER_PACKAGES = "driverPackages";
+
+	public static final String TYPE_PATTERN = "typePattern";
+
+	public static final String STATISTICS = "statistics";
+
+	public static final String MODE = "mode";
+
+	public static final String SAMPLE = "sample";
+
+	public static final String SLOW_MS = "slowMs";
+
+	public static final String SINK = "sink";
+
+	public static final String SUMMARY_INTERVAL_SEC = "summaryIntervalSec";
+
+	public static final String RING_SIZE = "ringSize";
+
+	private static final long DEFAULT_SLOW_MS_FOR_SLOW_MODE = 1000;
+
+	private final Map<String, String> options;
+
+	private AgentOptions(Map<String, String> options) {
+		this.options = options;
+	}
+
+	/**
+	 * Parse the agent argument.
+	 *
+	 * @param arg agent argument. can be {@code null}
+	 * @throws IllegalArgumentException when an option is not in {@code key=value} format
+	 */
+	public static AgentOptions parse(String arg) {
+		Map<String, String> options = new LinkedHashMap<>();
+		if (arg != null && !arg.trim().isEmpty()) {
+			for (String option : arg.split(",")) {
+				int index = option.indexOf('=');
+				if (index < 1) {
+					throw new IllegalArgumentException("Agent option must be in 'key=value' format: " + option);
+				}
+				options.put(option.substring(0, index).trim(), option.substring(index + 1).trim());
+			}
+		}
+		return new AgentOptions(Collections.unmodifiableMap(options));
+	}
+
+	public String get(String key, String defaultValue) {
+		return this.options.getOrDefault(key, defaultValue);
+	}
+
+	public Map<String, String> getOptions() {
+		return this.options;
+	}
+
+	public InstrumentationMode getInstrumentationMode() {
+		String value = get(INSTRUMENTATION, InstrumentationMode.DELEGATION.name());
+		try {
+			return InstrumentationMode.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown " + INSTRUMENTATION + ": " + value);
+		}
+	}
+
+	/**
+	 * @return package names ending with {@code "."}. empty when not specified
+	 */
+	public List<String> getDriverPackages() {
+		String value = get(DRIVER_PACKAGES, "");
+		List<String> packages = new ArrayList<>();
+		for (String packageName : value.split(":")) {
+			packageName = packageName.trim();
+			if (!packageName.isEmpty()) {
+				packages.add(packageName.endsWith(".") ? packageName : packageName + ".");
+			}
+		}
+		return packages;
+	}
+
+	/**
+	 * @return {@code null} when not specified
+	 */
+	public String getTypePattern() {
+		return get(TYPE_PATTERN, null);
+	}
+
+	public boolean isStatistics() {
+		return Boolean.parseBoolean(get(STATISTICS, "true"));
+	}
+
+	public ListenerMode getMode() {
+		String value = get(MODE, ListenerMode.LOG.name());
+		try {
+			return ListenerMode.valueOf(value.toUpperCase(Locale.ROOT));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown " + MODE + ": " + value);
+		}
+	}
+
+	/**
+	 * @return sampling ratio between {@code 0} and {@code 1}
+	 * @throws IllegalArgumentException when the value is out of range
+	 */
+	public double getSample() {
+		double sample = parseDouble(SAMPLE, 1);
+		if (sample < 0 || sample > 1) {
+			throw new IllegalArgumentException(SAMPLE + " must be between 0 and 1: " + sample);
+		}
+		return sample;
+	}
+
+	public long getSlowMs() {
+		long defaultValue = getMode() == ListenerMode.SLOW ? DEFAULT_SLOW_MS_FOR_SLOW_MODE : 0;
+		return parseLong(SLOW_MS, defaultValue);
+	}
+
+	public String getSink() {
+		return get(SINK, "stdout");
+	}
+
+	public long getSummaryIntervalSec() {
+		long interval = parseLong(SUMMARY_INTERVAL_SEC, 60);
+		if (interval < 1) {
+			throw new IllegalArgumentException(SUMMARY_INTERVAL_SEC + " must be positive: " + interval);
+		}
+		return interval;
+	}
+
+	public int getRingSize() {
+		long ringSize = parseLong(RING_SIZE, 1 << 20);
+		if (ringSize < 1 || ringSize > BinaryEventSink.MAX_CAPACITY) {
+			throw new IllegalArgumentException(RING_SIZE + " must be between 1 and " + BinaryEventSink.MAX_CAPACITY + ": " + ringSize);
+		}
+		return (int) ringSize;
+	}
+
+	private double parseDouble(String key, double defaultValue) {
+		String value = get(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + key + ": " + value);
+		}
+	}
+
+	private long parseLong(String key, long defaultValue) {
+		String value = get(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid " + key + ": " + value);
+		}
+	}
+
+	/**
+	 * How {@link R2dbcProxyAgent} instruments {@code ConnectionFactory} implementations.
+	 */
+	public enum InstrumentationMode {
+
+		/**
+		 * Delegate to {@link R2dbcProxyAgent.ConnectionFactoryInterceptor}.
+		 */
+		DELEGATION,
+
+		/**
+		 * Inline {@link R2dbcProxyAgent.ConnectionFactoryAdvice} into the driver methods.
+		 */
+		ADVICE
+
+	}
+
+	/**
+	 * Listener installed by {@link R2dbcProxyAgent}.
+	 */
+	public enum ListenerMode {
+
+		/**
+		 * Output method calls, connection acquisitions and queries.
+		 */
+		LOG,
+
+		/**
+		 * Output queries.
+		 */
+		QUERY,
+
+		/**
+		 * Output queries that took {@code slowMs} or longer.
+		 */
+		SLOW,
+
+		/**
+		 * Count connections and queries, and periodically output the summary.
+		 */
+		METRICS
+
+	}
+
+}
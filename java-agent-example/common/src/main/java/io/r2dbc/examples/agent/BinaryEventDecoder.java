@@ -0,0 +1,105 @@
+package io.r2dbc.examples.agent;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line tool to render records written by {@link BinaryEventSink} as text.
+ *
+ * {@code java -cp <agent jar> io.r2dbc.examples.agent.BinaryEventDecoder <ring file>}
+ *
+ * Records are printed out from the oldest one kept in the ring file.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class BinaryEventDecoder {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: BinaryEventDecoder <ring file>");
+			System.exit(1);
+		}
+		decode(Paths.get(args[0]), System.out);
+	}
+
+	public static void decode(Path path, PrintStream out) throws IOException {
+		Map<Integer, String> methods = new HashMap<>();
+		Map<Integer, String> queries = new HashMap<>();
+		readDictionary(Paths.get(path + BinaryEventSink.DICTIONARY_SUFFIX), methods, queries);
+
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.limit() < BinaryEventSink.HEADER_SIZE || buffer.getInt(0) != BinaryEventSink.MAGIC) {
+			throw new IllegalArgumentException("Not a ring file: " + path);
+		}
+		int version = buffer.getInt(4);
+		if (version != BinaryEventSink.VERSION) {
+			throw new IllegalArgumentException("Unsupported version: " + version);
+		}
+		int recordSize = buffer.getInt(8);
+		int capacity = buffer.getInt(12);
+		long sequence = buffer.getLong(BinaryEventSink.SEQUENCE_OFFSET);
+		long dropped = buffer.getLong(BinaryEventSink.DROPPED_OFFSET);
+
+		long first = Math.max(0, sequence - capacity);
+		out.println(String.format("# records=%d shown=%d dropped=%d", sequence, sequence - first, dropped));
+
+		for (long i = first; i < sequence; i++) {
+			int position = BinaryEventSink.HEADER_SIZE + (int) (i % capacity) * recordSize;
+			long timestamp = buffer.getLong(position);
+			long connectionId = buffer.getLong(position + 8);
+			long durationNanos = buffer.getLong(position + 16);
+			int methodId = buffer.getInt(position + 24);
+			int queryId = buffer.getInt(position + 28);
+
+			boolean failed = (methodId & BinaryEventSink.FAILED_FLAG) != 0;
+			String method = methods.getOrDefault(methodId & ~BinaryEventSink.FAILED_FLAG, "<unknown>");
+
+			StringBuilder sb = new StringBuilder();
+			sb.append(Instant.ofEpochMilli(timestamp));
+			sb.append(" conn=").append(connectionId < 0 ? "-" : String.valueOf(connectionId));
+			sb.append(" ").append(method);
+			sb.append(" took=").append(TimeUnit.NANOSECONDS.toMicros(durationNanos)).append("us");
+			sb.append(failed ? " FAILED" : " OK");
+			if (queryId == BinaryEventSink.QUERY_OVERFLOW) {
+				sb.append(" query=<overflow>");
+			}
+			else if (queryId != BinaryEventSink.NO_QUERY) {
+				sb.append(" query=\"").append(queries.getOrDefault(queryId, "<unknown>")).append("\"");
+			}
+			out.println(sb);
+		}
+	}
+
+	private static void readDictionary(Path path, Map<Integer, String> methods, Map<Integer, String> queries) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+		for (String line : lines) {
+			String[] entry = line.split("\t", 3);
+			if (entry.length != 3) {
+				continue;  // partially written line
+			}
+			Map<Integer, String> target = "M".equals(entry[0]) ? methods : queries;
+			// keep escaped, so that each record is rendered in one line
+			target.put(Integer.parseInt(entry[1]), entry[2]);
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package io.r2dbc.examples.agent;
+
+import java.util.concurrent.TimeUnit;
+
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+
+/**
+ * {@link ProxyExecutionListener} that passes method calls and queries to {@link BinaryEventSink}.
+ *
+ * Nothing is formatted on the calling thread. Slow threshold and sampling are applied in the
+ * same way as {@link LoggingExecutionListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class BinaryEventListener implements ProxyExecutionListener {
+
+	private final BinaryEventSink sink;
+
+	private final boolean recordMethods;
+
+	private final double sample;
+
+	private final long slowThresholdNanos;
+
+	/**
+	 * @param sink where to write events
+	 * @param recordMethods whether to record method calls in addition to queries
+	 * @param sample ratio of method calls and queries to record
+	 * @param slowThresholdMs queries faster than this are not recorded
+	 */
+	public BinaryEventListener(BinaryEventSink sink, boolean recordMethods, double sample, long slowThresholdMs) {
+		this.sink = sink;
+		this.recordMethods = recordMethods;
+		this.sample = sample;
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+	}
+
+	@Override
+	public void afterMethod(MethodExecutionInfo executionInfo) {
+		if (!this.recordMethods || !LoggingExecutionListener.isSampled(this.sample)) {
+			return;
+		}
+		this.sink.offer(System.currentTimeMillis(), getConnectionId(executionInfo.getConnectionInfo()),
+				executionInfo.getMethod(), null, executionInfo.getExecuteDuration().toNanos(), executionInfo.getThrown() != null);
+	}
+
+	@Override
+	public void afterQuery(QueryExecutionInfo execInfo) {
+		long durationNanos = execInfo.getExecuteDuration().toNanos();
+		if (durationNanos < this.slowThresholdNanos || !LoggingExecutionListener.isSampled(this.sample)) {
+			return;
+		}
+		this.sink.offer(System.currentTimeMillis(), getConnectionId(execInfo.getConnectionInfo()),
+				execInfo.getMethod(), execInfo.getQueries(), durationNanos, !execInfo.isSuccess());
+	}
+
+	private static String getConnectionId(ConnectionInfo connectionInfo) {
+		return connectionInfo == null ? null : connectionInfo.getConnectionId();
+	}
+
+}
@@ -0,0 +1,328 @@
+package io.r2dbc.examples.agent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import io.r2dbc.proxy.core.QueryInfo;
+
+/**
+ * Writes method calls and queries as fixed size binary records into a memory-mapped ring file.
+ *
+ * Calling threads only enqueue an event to a lock-free queue and wake up the writer thread. A
+ * single writer thread drains the queue, resolves method and query ids, and writes the records.
+ * When the queue is full, events are dropped and counted. The dictionary file and the number of
+ * dropped events are flushed every second and on close.
+ *
+ * The ring file starts with a {@value #HEADER_SIZE} bytes header:
+ * <pre>
+ *   0: int  magic("R2PX")
+ *   4: int  version
+ *   8: int  record size
+ *  12: int  capacity(number of records)
+ *  16: long sequence(number of records written so far)
+ *  24: long number of dropped events
+ * </pre>
+ * followed by {@value #RECORD_SIZE} bytes records. The record at {@code sequence % capacity} is
+ * written next, so once wrapped, the oldest record is overwritten.
+ * <pre>
+ *   0: long timestamp(epoch millis)
+ *   8: long connection id({@code -1} when not available or not numeric)
+ *  16: long duration(nanos)
+ *  24: int  method id. the highest bit is set when the call failed
+ *  28: int  query id({@value #NO_QUERY} for method calls, {@value #QUERY_OVERFLOW} when too many queries)
+ * </pre>
+ * Method and query ids are defined in the dictionary file({@code <path>.dict}) in
+ * {@code M|Q <tab> id <tab> escaped text} format. Both files are recreated on start.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see BinaryEventDecoder
+ */
+public class BinaryEventSink implements AutoCloseable {
+
+	static final int MAGIC = 0x52325058;  // "R2PX"
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 64;
+
+	static final int RECORD_SIZE = 32;
+
+	static final int SEQUENCE_OFFSET = 16;
+
+	static final int DROPPED_OFFSET = 24;
+
+	static final int FAILED_FLAG = 0x80000000;
+
+	static final int NO_QUERY = -1;
+
+	static final int QUERY_OVERFLOW = -2;
+
+	static final String DICTIONARY_SUFFIX = ".dict";
+
+	// a mapped region cannot exceed Integer.MAX_VALUE bytes
+	static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+	private static final int MAX_QUEUED_EVENTS = 1 << 16;
+
+	private static final int MAX_QUERIES = 100_000;
+
+	private static final int DRAIN_BATCH_SIZE = 4096;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	private final Writer dictionary;
+
+	private final Thread writerThread;
+
+	private volatile boolean running = true;
+
+	// accessed only by the writer thread
+
+	private final Map<Method, Integer> methodIds = new HashMap<>();
+
+	private final Map<String, Integer> queryIds = new HashMap<>();
+
+	private long sequence;
+
+	private long lastFlushNanos = System.nanoTime();
+
+	private BinaryEventSink(FileChannel channel, MappedByteBuffer buffer, int capacity, Writer dictionary) {
+		this.channel = channel;
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.dictionary = dictionary;
+		this.writerThread = new Thread(this::run, "r2dbc-proxy-agent-binary-sink");
+		this.writerThread.setDaemon(true);
+	}
+
+	/**
+	 * Create the ring file and the dictionary file, and start the writer thread.
+	 *
+	 * @param path ring file
+	 * @param capacity number of records kept in the ring file
+	 */
+	public static BinaryEventSink open(Path path, int capacity) throws IOException {
+		if (capacity < 1 || capacity > MAX_CAPACITY) {
+			throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY + ": " + capacity);
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, RECORD_SIZE);
+		buffer.putInt(12, capacity);
+
+		Writer dictionary = Files.newBufferedWriter(Paths.get(path + DICTIONARY_SUFFIX), StandardCharsets.UTF_8);
+
+		BinaryEventSink sink = new BinaryEventSink(channel, buffer, capacity, dictionary);
+		sink.writerThread.start();
+		return sink;
+	}
+
+	/**
+	 * Enqueue an event. This method does not block.
+	 *
+	 * @param connectionId can be {@code null}
+	 * @param queries {@code null} for method calls
+	 */
+	public void offer(long timestamp, String connectionId, Method method, List<QueryInfo> queries, long durationNanos, boolean failed) {
+		if (this.queued.incrementAndGet() > MAX_QUEUED_EVENTS) {
+			this.queued.decrementAndGet();
+			this.dropped.increment();
+			return;
+		}
+		this.queue.offer(new Event(timestamp, connectionId, method, queries, durationNanos, failed));
+		LockSupport.unpark(this.writerThread);
+	}
+
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	/**
+	 * Write remaining events and close the files.
+	 */
+	@Override
+	public void close() {
+		this.running = false;
+		LockSupport.unpark(this.writerThread);
+		try {
+			this.writerThread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		try {
+			while (this.running) {
+				int drained = drain();
+				long now = System.nanoTime();
+				if (now - this.lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+					flush();
+					this.lastFlushNanos = now;
+				}
+				if (drained == 0) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+			}
+			while (drain() > 0) {
+				// write remaining events
+			}
+			flush();
+			this.buffer.force();
+			this.dictionary.close();
+			this.channel.close();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private int drain() throws IOException {
+		int count = 0;
+		Event event;
+		while (count < DRAIN_BATCH_SIZE && (event = this.queue.poll()) != null) {
+			write(event);
+			count++;
+		}
+		if (count > 0) {
+			this.queued.addAndGet(-count);
+			this.buffer.putLong(SEQUENCE_OFFSET, this.sequence);
+		}
+		return count;
+	}
+
+	private void write(Event event) throws IOException {
+		int methodId = getMethodId(event.method);
+		int queryId = event.queries == null ? NO_QUERY : getQueryId(event.queries);
+
+		int position = HEADER_SIZE + (int) (this.sequence % this.capacity) * RECORD_SIZE;
+		this.buffer.putLong(position, event.timestamp);
+		this.buffer.putLong(position + 8, parseConnectionId(event.connectionId));
+		this.buffer.putLong(position + 16, event.durationNanos);
+		this.buffer.putInt(position + 24, event.failed ? methodId | FAILED_FLAG : methodId);
+		this.buffer.putInt(position + 28, queryId);
+		this.sequence++;
+	}
+
+	private void flush() throws IOException {
+		this.buffer.putLong(DROPPED_OFFSET, this.dropped.sum());
+		this.dictionary.flush();
+	}
+
+	private int getMethodId(Method method) throws IOException {
+		Integer id = this.methodIds.get(method);
+		if (id == null) {
+			id = this.methodIds.size();
+			this.methodIds.put(method, id);
+			writeDictionary("M", id, method.getDeclaringClass().getSimpleName() + "#" + method.getName());
+		}
+		return id;
+	}
+
+	private int getQueryId(List<QueryInfo> queries) throws IOException {
+		String query = queries.size() == 1 ? queries.get(0).getQuery() : joinQueries(queries);
+		Integer id = this.queryIds.get(query);
+		if (id == null) {
+			if (this.queryIds.size() >= MAX_QUERIES) {
+				return QUERY_OVERFLOW;
+			}
+			id = this.queryIds.size();
+			this.queryIds.put(query, id);
+			writeDictionary("Q", id, query);
+		}
+		return id;
+	}
+
+	private void writeDictionary(String type, int id, String text) throws IOException {
+		this.dictionary.write(type + "\t" + id + "\t" + escape(text) + "\n");
+	}
+
+	private static String joinQueries(List<QueryInfo> queries) {
+		StringBuilder sb = new StringBuilder();
+		for (QueryInfo queryInfo : queries) {
+			if (sb.length() > 0) {
+				sb.append("; ");
+			}
+			sb.append(queryInfo.getQuery());
+		}
+		return sb.toString();
+	}
+
+	private static long parseConnectionId(String connectionId) {
+		if (connectionId == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(connectionId);
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\r", "\\r").replace("\n", "\\n");
+	}
+
+	private static class Event {
+
+		private final long timestamp;
+
+		private final String connectionId;
+
+		private final Method method;
+
+		private final List<QueryInfo> queries;
+
+		private final long durationNanos;
+
+		private final boolean failed;
+
+		private Event(long timestamp, String connectionId, Method method, List<QueryInfo> queries, long durationNanos, boolean failed) {
+			this.timestamp = timestamp;
+			this.connectionId = connectionId;
+			this.method = method;
+			this.queries = queries;
+			this.durationNanos = durationNanos;
+			this.failed = failed;
+		}
+
+	}
+
+}
@@ -2,6 +2,7 @@ package io.r2dbc.examples.agent;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.Objects;
 
 import io.r2dbc.proxy.callback.BatchCallbackHandler;
 import io.r2dbc.proxy.callback.CallbackHandler;
@@ -20,13 +21,27 @@ import io.r2dbc.spi.ConnectionFactory;
 import io.r2dbc.spi.Result;
 import io.r2dbc.spi.Statement;
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.TypeCache;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.scaffold.subclass.ConstructorStrategy;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.FixedValue;
+import net.bytebuddy.implementation.MethodCall;
 import net.bytebuddy.implementation.bind.annotation.AllArguments;
 import net.bytebuddy.implementation.bind.annotation.Origin;
 import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 import net.bytebuddy.implementation.bind.annotation.This;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatcher;
 
 import static net.bytebuddy.implementation.MethodDelegation.to;
+import static net.bytebuddy.matcher.ElementMatchers.isConstructor;
 import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.none;
 
 /**
  * {@link ProxyFactory} implementation with {@link ByteBuddy}.
@@ -35,60 +50,277 @@ import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
  *
  * https://github.com/r2dbc/r2dbc-spi/issues/9
  *
+ * Proxy instances are created by generated {@link ProxyInstantiator}s, which directly call
+ * the constructor of proxy classes without reflection.
+ *
+ * With {@link DispatchMode#DIRECT_BIND}, methods that do not need to be observed are
+ * generated as direct calls to the target object, without going through the callback handler.
+ *
+ * Proxy and instantiator classes generated at build time by {@link ProxyClassGenerator} are
+ * used when they are available. Otherwise, they are generated at runtime.
+ *
+ * Generated classes are cached per class loader of the proxied interfaces and reused by
+ * all instances of this factory. The cache does not prevent class loaders from being
+ * garbage collected.
+ *
  * @author Tadaya Tsuyukubo
  */
 public class ByteBuddyProxyFactory implements ProxyFactory {
 
+	private static final String TARGET_FIELD = "target";
+
+	// package of classes generated at build time
+	static final String GENERATED_PACKAGE = "io.r2dbc.examples.agent.generated.";
+
+	// proxied interfaces
+	static final Class<?>[] PROXY_INTERFACES = {ConnectionFactory.class, Connection.class, Batch.class, Statement.class, Result.class};
+
+	// instantiator classes. The proxy class is reachable from its instantiator class
+	private static final TypeCache<ProxyClassKey> INSTANTIATOR_CLASSES = new TypeCache.WithInlineExpunction<>(TypeCache.Sort.SOFT);
+
 	private ProxyConfig proxyConfig;
 
-	private Constructor<ConnectionFactory> connectionFactoryProxyConstructor;
+	private DispatchMode dispatchMode;
+
+	private ProxyInstantiator<ConnectionFactory> connectionFactoryProxyInstantiator;
 
-	private Constructor<Connection> connectionProxyConstructor;
+	private ProxyInstantiator<Connection> connectionProxyInstantiator;
 
-	private Constructor<Batch> batchProxyConstructor;
+	private ProxyInstantiator<Batch> batchProxyInstantiator;
 
-	private Constructor<Statement> statementProxyConstructor;
+	private ProxyInstantiator<Statement> statementProxyInstantiator;
 
-	private Constructor<Result> resultProxyConstructor;
+	private ProxyInstantiator<Result> resultProxyInstantiator;
 
 	public ByteBuddyProxyFactory(ProxyConfig proxyConfig) {
+		this(proxyConfig, DispatchMode.CALLBACK_HANDLER);
+	}
+
+	public ByteBuddyProxyFactory(ProxyConfig proxyConfig, DispatchMode dispatchMode) {
 
 		this.proxyConfig = proxyConfig;
+		this.dispatchMode = dispatchMode;
 
 		ByteBuddy byteBuddy = new ByteBuddy();
 
-		// generate proxy classes
-		Class<ConnectionFactory> connectionFactoryProxyClass = createProxyClass(byteBuddy, ConnectionFactory.class);
-		Class<Connection> connectionProxyClass = createProxyClass(byteBuddy, Connection.class);
-		Class<Batch> batchProxyClass = createProxyClass(byteBuddy, Batch.class);
-		Class<Statement> statementProxyClass = createProxyClass(byteBuddy, Statement.class);
-		Class<Result> resultProxyClass = createProxyClass(byteBuddy, Result.class);
-
-		// retrieve constructor from generated proxy classes
-		this.connectionFactoryProxyConstructor = findConstructor(connectionFactoryProxyClass);
-		this.connectionProxyConstructor = findConstructor(connectionProxyClass);
-		this.batchProxyConstructor = findConstructor(batchProxyClass);
-		this.statementProxyConstructor = findConstructor(statementProxyClass);
-		this.resultProxyConstructor = findConstructor(resultProxyClass);
+		// retrieve or generate instantiators that call constructor of proxy classes
+		this.connectionFactoryProxyInstantiator = getInstantiator(byteBuddy, ConnectionFactory.class);
+		this.connectionProxyInstantiator = getInstantiator(byteBuddy, Connection.class);
+		this.batchProxyInstantiator = getInstantiator(byteBuddy, Batch.class);
+		this.statementProxyInstantiator = getInstantiator(byteBuddy, Statement.class);
+		this.resultProxyInstantiator = getInstantiator(byteBuddy, Result.class);
 
 	}
 
 	@SuppressWarnings("unchecked")
-	private <T> Constructor<T> findConstructor(Class<T> proxyClass) {
-		// currently each callback handler defines only one constructor, so shortcut the search
-		return (Constructor<T>) proxyClass.getDeclaredConstructors()[0];
+	private <T> ProxyInstantiator<T> getInstantiator(ByteBuddy byteBuddy, Class<T> interfaceType) {
+		Class<?> instantiatorClass = getInstantiatorClass(byteBuddy, interfaceType, this.dispatchMode);
+		try {
+			return (ProxyInstantiator<T>) instantiatorClass.getDeclaredConstructor().newInstance();
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Failed to create an instantiator for " + interfaceType, e);
+		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private <T> Class<T> createProxyClass(ByteBuddy byteBuddy, Class<T> interfaceType) {
-		return (Class<T>) byteBuddy
-				.subclass(CallbackHandlerProxy.class)
+	/**
+	 * Retrieve the instantiator class from the cache shared by all instances of this factory.
+	 * When it is not cached yet, find or create the instantiator class.
+	 */
+	static Class<?> getInstantiatorClass(ByteBuddy byteBuddy, Class<?> interfaceType, DispatchMode dispatchMode) {
+		ProxyClassKey key = new ProxyClassKey(interfaceType.getName(), dispatchMode);
+		return INSTANTIATOR_CLASSES.findOrInsert(interfaceType.getClassLoader(), key,
+				() -> findOrCreateInstantiatorClass(byteBuddy, interfaceType, dispatchMode, ByteBuddyProxyFactory.class.getClassLoader()),
+				INSTANTIATOR_CLASSES);
+	}
+
+	/**
+	 * Use the instantiator class generated at build time by {@link ProxyClassGenerator}.
+	 * When it is not available, generate the instantiator and proxy classes.
+	 *
+	 * Pre-generated classes implement the interface visible from the class loader of this
+	 * class. When the requested interface is loaded by another class loader(e.g. a child
+	 * class loader), they are not used.
+	 *
+	 * @param classLoader class loader to look up the pre-generated classes
+	 */
+	static Class<?> findOrCreateInstantiatorClass(ByteBuddy byteBuddy, Class<?> interfaceType, DispatchMode dispatchMode, ClassLoader classLoader) {
+		try {
+			Class<?> proxyClass = Class.forName(getProxyClassName(interfaceType, dispatchMode), false, classLoader);
+			if (interfaceType.isAssignableFrom(proxyClass)) {
+				return Class.forName(getInstantiatorClassName(interfaceType, dispatchMode), false, classLoader);
+			}
+		}
+		catch (ClassNotFoundException e) {
+			// not pre-generated
+		}
+
+		DynamicType.Unloaded<?> proxyType = makeProxyType(byteBuddy, interfaceType, dispatchMode, null);
+		return makeInstantiatorType(byteBuddy, proxyType.getTypeDescription(), null)
+				.include(proxyType)
+				.load(interfaceType.getClassLoader())
+				.getLoaded();
+	}
+
+	static String getProxyClassName(Class<?> interfaceType, DispatchMode dispatchMode) {
+		return GENERATED_PACKAGE + interfaceType.getSimpleName() + dispatchMode.getClassNameSuffix() + "Proxy";
+	}
+
+	static String getInstantiatorClassName(Class<?> interfaceType, DispatchMode dispatchMode) {
+		return getProxyClassName(interfaceType, dispatchMode) + "Instantiator";
+	}
+
+	/**
+	 * Create a proxy type that keeps the target object in a typed field.
+	 *
+	 * Methods selected by the {@link DispatchMode} directly call the target and return the
+	 * proxy itself, so that following calls are still on the proxy. Other methods delegate
+	 * to the callback handler.
+	 *
+	 * @param name class name. {@code null} to use a generated name.
+	 */
+	static DynamicType.Unloaded<?> makeProxyType(ByteBuddy byteBuddy, Class<?> interfaceType, DispatchMode dispatchMode, String name) {
+		DynamicType.Builder<CallbackHandlerProxy> builder = byteBuddy
+				.subclass(CallbackHandlerProxy.class, ConstructorStrategy.Default.NO_CONSTRUCTORS);
+		if (name != null) {
+			builder = builder.name(name);
+		}
+		return builder
 				.implement(interfaceType)
+				.defineField(TARGET_FIELD, interfaceType, Visibility.PRIVATE)
+				// constructor(callbackHandler, target)
+				.defineConstructor(Visibility.PUBLIC)
+				.withParameters(CallbackHandler.class, interfaceType)
+				.intercept(MethodCall.invoke(getCallbackHandlerProxyConstructor()).withArgument(0)
+						.andThen(FieldAccessor.ofField(TARGET_FIELD).setsArgumentAt(1)))
 				.method(isDeclaredBy(interfaceType))
 				.intercept(to(CallbackHandlerInterceptor.class))
-				.make()
-				.load(interfaceType.getClassLoader())
-				.getLoaded();
+				.method(isDeclaredBy(interfaceType).and(dispatchMode.getDirectMethods(interfaceType)))
+				.intercept(MethodCall.invokeSelf().onField(TARGET_FIELD).withAllArguments()
+						.andThen(FixedValue.self()))
+				.make();
+	}
+
+	private static Constructor<CallbackHandlerProxy> getCallbackHandlerProxyConstructor() {
+		try {
+			return CallbackHandlerProxy.class.getConstructor(CallbackHandler.class);
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Create a {@link ProxyInstantiator} type whose {@code newInstance} is
+	 * {@code new <proxyType>(callbackHandler, target)}.
+	 *
+	 * The instantiator needs to be loaded together with the proxy type, so that it can
+	 * access the proxy class.
+	 *
+	 * @param name class name. {@code null} to use a generated name.
+	 */
+	static DynamicType.Unloaded<?> makeInstantiatorType(ByteBuddy byteBuddy, TypeDescription proxyType, String name) {
+		// proxy type defines only one constructor
+		MethodDescription constructor = proxyType.getDeclaredMethods().filter(isConstructor()).getOnly();
+		DynamicType.Builder<ProxyInstantiator> builder = byteBuddy.subclass(ProxyInstantiator.class);
+		if (name != null) {
+			builder = builder.name(name);
+		}
+		return builder
+				.method(named("newInstance"))
+				.intercept(MethodCall.construct(constructor).withAllArguments()
+						.withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+				.make();
+	}
+
+	/**
+	 * Cache key for generated classes.
+	 *
+	 * Holds the interface name instead of the class, so that the key does not keep the
+	 * class loader of the interface alive.
+	 */
+	private static class ProxyClassKey {
+
+		private final String interfaceName;
+
+		private final DispatchMode dispatchMode;
+
+		ProxyClassKey(String interfaceName, DispatchMode dispatchMode) {
+			this.interfaceName = interfaceName;
+			this.dispatchMode = dispatchMode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof ProxyClassKey)) {
+				return false;
+			}
+			ProxyClassKey that = (ProxyClassKey) o;
+			return this.interfaceName.equals(that.interfaceName) && this.dispatchMode == that.dispatchMode;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.interfaceName, this.dispatchMode);
+		}
+	}
+
+	/**
+	 * Create a proxy instance.
+	 *
+	 * Implementation is generated per proxy class.
+	 */
+	public interface ProxyInstantiator<T> {
+		T newInstance(CallbackHandler callbackHandler, Object target);
+	}
+
+	/**
+	 * Specify methods that directly call the target object.
+	 *
+	 * Direct methods are not observed by the callback handler; therefore, listeners are not
+	 * called for them and their information is not available. For example, with
+	 * {@link #DIRECT_BIND}, bindings are not included in {@link QueryExecutionInfo}.
+	 * Direct methods must return the interface type, since the proxy returns itself.
+	 */
+	public enum DispatchMode {
+
+		/**
+		 * All methods delegate to the callback handler.
+		 */
+		CALLBACK_HANDLER("") {
+			@Override
+			public ElementMatcher<MethodDescription> getDirectMethods(Class<?> interfaceType) {
+				return none();
+			}
+		},
+
+		/**
+		 * {@link Statement#bind} and {@link Statement#bindNull} directly call the target.
+		 */
+		DIRECT_BIND("DirectBind") {
+			@Override
+			public ElementMatcher<MethodDescription> getDirectMethods(Class<?> interfaceType) {
+				if (Statement.class.equals(interfaceType)) {
+					return named("bind").or(named("bindNull"));
+				}
+				return none();
+			}
+		};
+
+		private final String classNameSuffix;
+
+		DispatchMode(String classNameSuffix) {
+			this.classNameSuffix = classNameSuffix;
+		}
+
+		public abstract ElementMatcher<MethodDescription> getDirectMethods(Class<?> interfaceType);
+
+		String getClassNameSuffix() {
+			return this.classNameSuffix;
+		}
 	}
 
 	/**
@@ -123,39 +355,30 @@ public class ByteBuddyProxyFactory implements ProxyFactory {
 	@Override
 	public ConnectionFactory wrapConnectionFactory(ConnectionFactory connectionFactory) {
 		ConnectionFactoryCallbackHandler handler = new ConnectionFactoryCallbackHandler(connectionFactory, this.proxyConfig);
-		return instantiate(this.connectionFactoryProxyConstructor, handler);
+		return this.connectionFactoryProxyInstantiator.newInstance(handler, connectionFactory);
 	}
 
 	@Override
 	public Connection wrapConnection(Connection connection, ConnectionInfo connectionInfo) {
 		ConnectionCallbackHandler handler = new ConnectionCallbackHandler(connection, connectionInfo, this.proxyConfig);
-		return instantiate(this.connectionProxyConstructor, handler);
+		return this.connectionProxyInstantiator.newInstance(handler, connection);
 	}
 
 	@Override
 	public Batch wrapBatch(Batch batch, ConnectionInfo connectionInfo) {
 		BatchCallbackHandler handler = new BatchCallbackHandler(batch, connectionInfo, this.proxyConfig);
-		return instantiate(this.batchProxyConstructor, handler);
+		return this.batchProxyInstantiator.newInstance(handler, batch);
 	}
 
 	@Override
 	public Statement wrapStatement(Statement statement, StatementInfo statementInfo, ConnectionInfo connectionInfo) {
 		StatementCallbackHandler handler = new StatementCallbackHandler(statement, statementInfo, connectionInfo, this.proxyConfig);
-		return instantiate(this.statementProxyConstructor, handler);
+		return this.statementProxyInstantiator.newInstance(handler, statement);
 	}
 
 	@Override
 	public Result wrapResult(Result result, QueryExecutionInfo queryExecutionInfo) {
 		ResultCallbackHandler handler = new ResultCallbackHandler(result, queryExecutionInfo, this.proxyConfig);
-		return instantiate(this.resultProxyConstructor, handler);
-	}
-
-	private <T> T instantiate(Constructor<T> constructor, Object... args) {
-		try {
-			return constructor.newInstance(args);
-		}
-		catch (Exception e) {
-			throw new RuntimeException("Failed to create an instance", e);
-		}
+		return this.resultProxyInstantiator.newInstance(handler, result);
 	}
 }
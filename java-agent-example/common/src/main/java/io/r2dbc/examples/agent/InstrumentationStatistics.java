@@ -0,0 +1,121 @@
+package io.r2dbc.examples.agent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.utility.JavaModule;
+
+/**
+ * {@link AgentBuilder.Listener} that counts discovered, ignored and transformed types, and
+ * the time spent by the agent while classes are loaded.
+ *
+ * Ignored types are the ones not transformed. Among them, types matched by the ignore rules
+ * wrapped by {@link #countExcluded(ElementMatcher)} are also counted as excluded, which skip
+ * resolving the type hierarchy.
+ *
+ * Time is measured from discovery to completion of each type. When loading a type triggers
+ * loading another type(e.g. resolving a super type), only the outermost one is counted.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class InstrumentationStatistics extends AgentBuilder.Listener.Adapter {
+
+	private final LongAdder discovered = new LongAdder();
+
+	private final LongAdder excluded = new LongAdder();
+
+	private final LongAdder ignored = new LongAdder();
+
+	private final LongAdder transformed = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder elapsedNanos = new LongAdder();
+
+	// [0] = nesting depth, [1] = start time of the outermost type
+	private final ThreadLocal<long[]> current = ThreadLocal.withInitial(() -> new long[2]);
+
+	@Override
+	public void onDiscovery(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+		this.discovered.increment();
+		long[] state = this.current.get();
+		if (state[0]++ == 0) {
+			state[1] = System.nanoTime();
+		}
+	}
+
+	@Override
+	public void onTransformation(TypeDescription typeDescription, ClassLoader classLoader, JavaModule module,
+			boolean loaded, DynamicType dynamicType) {
+		this.transformed.increment();
+	}
+
+	@Override
+	public void onIgnored(TypeDescription typeDescription, ClassLoader classLoader, JavaModule module, boolean loaded) {
+		this.ignored.increment();
+	}
+
+	@Override
+	public void onError(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded, Throwable throwable) {
+		this.errors.increment();
+	}
+
+	@Override
+	public void onComplete(String typeName, ClassLoader classLoader, JavaModule module, boolean loaded) {
+		long[] state = this.current.get();
+		if (state[0] > 0 && --state[0] == 0) {
+			this.elapsedNanos.add(System.nanoTime() - state[1]);
+		}
+	}
+
+	/**
+	 * Wrap an ignore matcher to count the types it matches as excluded.
+	 */
+	public <T> ElementMatcher.Junction<T> countExcluded(ElementMatcher<? super T> matcher) {
+		return new ElementMatcher.Junction.AbstractBase<T>() {
+			@Override
+			public boolean matches(T target) {
+				boolean matched = matcher.matches(target);
+				if (matched) {
+					InstrumentationStatistics.this.excluded.increment();
+				}
+				return matched;
+			}
+		};
+	}
+
+	public long getDiscovered() {
+		return this.discovered.sum();
+	}
+
+	public long getExcluded() {
+		return this.excluded.sum();
+	}
+
+	public long getIgnored() {
+		return this.ignored.sum();
+	}
+
+	public long getTransformed() {
+		return this.transformed.sum();
+	}
+
+	public long getErrors() {
+		return this.errors.sum();
+	}
+
+	public long getElapsedNanos() {
+		return this.elapsedNanos.sum();
+	}
+
+	public String format() {
+		return String.format("R2dbcProxyAgent: discovered=%d ignored=%d(excluded=%d) transformed=%d errors=%d time=%dms",
+				getDiscovered(), getIgnored(), getExcluded(), getTransformed(), getErrors(),
+				TimeUnit.NANOSECONDS.toMillis(getElapsedNanos()));
+	}
+
+}
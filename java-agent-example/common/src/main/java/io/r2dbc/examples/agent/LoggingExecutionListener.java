@@ -0,0 +1,96 @@
+package io.r2dbc.examples.agent;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.proxy.support.MethodExecutionInfoFormatter;
+import io.r2dbc.proxy.support.QueryExecutionInfoFormatter;
+import io.r2dbc.spi.ConnectionFactory;
+
+import static java.lang.String.format;
+
+/**
+ * {@link ProxyExecutionListener} that prints out method interactions and executed queries.
+ *
+ * Queries faster than the slow threshold and calls that are not sampled are skipped before
+ * formatting. For method calls, sampling is decided in {@link #beforeMethod} and the same
+ * decision is used in {@link #afterMethod}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class LoggingExecutionListener implements ProxyExecutionListener {
+
+	private static final String SAMPLED_KEY = "r2dbcProxyAgent.sampled";
+
+	private final PrintStream out;
+
+	private final boolean logMethods;
+
+	private final double sample;
+
+	private final long slowThresholdNanos;
+
+	private final MethodExecutionInfoFormatter methodFormatter = MethodExecutionInfoFormatter.withDefault();
+
+	private final QueryExecutionInfoFormatter queryFormatter = QueryExecutionInfoFormatter.showAll();
+
+	/**
+	 * @param out where to print out
+	 * @param logMethods whether to print out method interactions in addition to queries
+	 * @param sample ratio of method calls and queries to print out
+	 * @param slowThresholdMs queries faster than this are not printed out
+	 */
+	public LoggingExecutionListener(PrintStream out, boolean logMethods, double sample, long slowThresholdMs) {
+		this.out = out;
+		this.logMethods = logMethods;
+		this.sample = sample;
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+	}
+
+	@Override
+	public void beforeMethod(MethodExecutionInfo executionInfo) {
+		if (!this.logMethods || !isSampled()) {
+			return;
+		}
+		executionInfo.getValueStore().put(SAMPLED_KEY, Boolean.TRUE);
+		this.out.println("Before >> " + this.methodFormatter.format(executionInfo));
+	}
+
+	@Override
+	public void afterMethod(MethodExecutionInfo executionInfo) {
+		if (!this.logMethods || executionInfo.getValueStore().get(SAMPLED_KEY) == null) {
+			return;
+		}
+		this.out.println("After  >> " + this.methodFormatter.format(executionInfo));
+
+		if (isCreateOnConnectionFactory(executionInfo.getMethod()) && executionInfo.getThrown() == null) {
+			this.out.println(format(">> Connection acquired. took=%sms", executionInfo.getExecuteDuration().toMillis()));
+		}
+	}
+
+	@Override
+	public void afterQuery(QueryExecutionInfo execInfo) {
+		if (execInfo.getExecuteDuration().toNanos() < this.slowThresholdNanos || !isSampled()) {
+			return;
+		}
+		this.out.println(this.queryFormatter.format(execInfo));
+	}
+
+	private boolean isSampled() {
+		return isSampled(this.sample);
+	}
+
+	static boolean isSampled(double sample) {
+		return sample >= 1 || ThreadLocalRandom.current().nextDouble() < sample;
+	}
+
+	static boolean isCreateOnConnectionFactory(Method method) {
+		return "create".equals(method.getName()) && ConnectionFactory.class.isAssignableFrom(method.getDeclaringClass());
+	}
+
+}
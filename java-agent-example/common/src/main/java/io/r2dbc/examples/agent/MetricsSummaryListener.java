@@ -0,0 +1,98 @@
+package io.r2dbc.examples.agent;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+
+/**
+ * {@link ProxyExecutionListener} that counts acquired connections and executed queries, and
+ * periodically prints out the summary of the interval.
+ *
+ * Callbacks only update counters, so nothing is formatted per method call or query.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class MetricsSummaryListener implements ProxyExecutionListener {
+
+	private final PrintStream out;
+
+	private final long slowThresholdNanos;
+
+	private final long intervalSec;
+
+	private final LongAdder connections = new LongAdder();
+
+	private final LongAdder queries = new LongAdder();
+
+	private final LongAdder failedQueries = new LongAdder();
+
+	private final LongAdder slowQueries = new LongAdder();
+
+	private final LongAdder queryNanos = new LongAdder();
+
+	private final LongAccumulator maxQueryNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param out where to print out the summary
+	 * @param slowThresholdMs queries that took this or longer are counted as slow. {@code 0} to disable
+	 * @param intervalSec interval of the summary
+	 */
+	public MetricsSummaryListener(PrintStream out, long slowThresholdMs, long intervalSec) {
+		this.out = out;
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+		this.intervalSec = intervalSec;
+	}
+
+	/**
+	 * Start printing out the summary on a daemon thread.
+	 */
+	public void start() {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "r2dbc-proxy-agent-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(() -> this.out.println(summarize()), this.intervalSec, this.intervalSec, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void afterMethod(MethodExecutionInfo executionInfo) {
+		if (executionInfo.getThrown() == null && LoggingExecutionListener.isCreateOnConnectionFactory(executionInfo.getMethod())) {
+			this.connections.increment();
+		}
+	}
+
+	@Override
+	public void afterQuery(QueryExecutionInfo execInfo) {
+		long nanos = execInfo.getExecuteDuration().toNanos();
+		this.queries.increment();
+		this.queryNanos.add(nanos);
+		this.maxQueryNanos.accumulate(nanos);
+		if (!execInfo.isSuccess()) {
+			this.failedQueries.increment();
+		}
+		if (this.slowThresholdNanos > 0 && nanos >= this.slowThresholdNanos) {
+			this.slowQueries.increment();
+		}
+	}
+
+	/**
+	 * Summarize and reset the counters.
+	 */
+	public String summarize() {
+		long queryCount = this.queries.sumThenReset();
+		long totalNanos = this.queryNanos.sumThenReset();
+		long avgMicros = queryCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / queryCount);
+		return String.format("R2dbcProxyAgent: interval=%ds connections=%d queries=%d failed=%d slow=%d avg=%dus max=%dus",
+				this.intervalSec, this.connections.sumThenReset(), queryCount, this.failedQueries.sumThenReset(),
+				this.slowQueries.sumThenReset(), avgMicros, TimeUnit.NANOSECONDS.toMicros(this.maxQueryNanos.getThenReset()));
+	}
+
+}
@@ -0,0 +1,45 @@
+package io.r2dbc.examples.agent;
+
+import java.io.File;
+import java.io.IOException;
+
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory.DispatchMode;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.DynamicType;
+
+/**
+ * Generate proxy and instantiator classes for {@link ByteBuddyProxyFactory} at build time.
+ *
+ * Generated classes are written to the given directory(usually "target/classes") with fixed
+ * names, and packaged with other classes. {@link ByteBuddyProxyFactory} loads them instead of
+ * generating classes at runtime, which reduces startup time.
+ *
+ * This is run by "exec-maven-plugin" at "process-classes" phase.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ProxyClassGenerator {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			throw new IllegalArgumentException("Usage: ProxyClassGenerator <output directory>");
+		}
+		File outputDirectory = new File(args[0]);
+
+		ByteBuddy byteBuddy = new ByteBuddy();
+		for (DispatchMode dispatchMode : DispatchMode.values()) {
+			for (Class<?> interfaceType : ByteBuddyProxyFactory.PROXY_INTERFACES) {
+				String proxyClassName = ByteBuddyProxyFactory.getProxyClassName(interfaceType, dispatchMode);
+				String instantiatorClassName = ByteBuddyProxyFactory.getInstantiatorClassName(interfaceType, dispatchMode);
+
+				DynamicType.Unloaded<?> proxyType = ByteBuddyProxyFactory.makeProxyType(byteBuddy, interfaceType, dispatchMode, proxyClassName);
+				ByteBuddyProxyFactory.makeInstantiatorType(byteBuddy, proxyType.getTypeDescription(), instantiatorClassName)
+						.include(proxyType)
+						.saveIn(outputDirectory);
+
+				System.out.println("Generated " + proxyClassName + " and " + instantiatorClassName);
+			}
+		}
+	}
+
+}
@@ -1,32 +1,60 @@
 package io.r2dbc.examples.agent;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.instrument.Instrumentation;
 import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import io.r2dbc.examples.agent.AgentOptions.InstrumentationMode;
+import io.r2dbc.examples.agent.AgentOptions.ListenerMode;
 import io.r2dbc.proxy.callback.ConnectionFactoryCallbackHandler;
 import io.r2dbc.proxy.callback.ProxyConfig;
-import io.r2dbc.proxy.core.MethodExecutionInfo;
-import io.r2dbc.proxy.core.QueryExecutionInfo;
-import io.r2dbc.proxy.listener.LifeCycleListener;
-import io.r2dbc.proxy.listener.ProxyExecutionListener;
-import io.r2dbc.proxy.support.MethodExecutionInfoFormatter;
-import io.r2dbc.proxy.support.QueryExecutionInfoFormatter;
 import io.r2dbc.spi.Connection;
 import io.r2dbc.spi.ConnectionFactory;
 import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.modifier.FieldManifestation;
+import net.bytebuddy.description.modifier.FieldPersistence;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
 import net.bytebuddy.implementation.bind.annotation.AllArguments;
 import net.bytebuddy.implementation.bind.annotation.Origin;
 import net.bytebuddy.implementation.bind.annotation.RuntimeType;
 import net.bytebuddy.implementation.bind.annotation.SuperCall;
 import net.bytebuddy.implementation.bind.annotation.This;
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.pool.TypePool;
 import org.reactivestreams.Publisher;
 import reactor.core.publisher.Mono;
 
-import static java.lang.String.format;
 import static net.bytebuddy.implementation.MethodDelegation.to;
+import static net.bytebuddy.matcher.ElementMatchers.any;
+import static net.bytebuddy.matcher.ElementMatchers.isAbstract;
+import static net.bytebuddy.matcher.ElementMatchers.isBootstrapClassLoader;
+import static net.bytebuddy.matcher.ElementMatchers.isExtensionClassLoader;
+import static net.bytebuddy.matcher.ElementMatchers.isInterface;
 import static net.bytebuddy.matcher.ElementMatchers.isSubTypeOf;
+import static net.bytebuddy.matcher.ElementMatchers.isSynthetic;
+import static net.bytebuddy.matcher.ElementMatchers.nameMatches;
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
 import static net.bytebuddy.matcher.ElementMatchers.named;
+import static net.bytebuddy.matcher.ElementMatchers.none;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
 /**
  * Sample Java Agent.
@@ -38,45 +66,60 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
  */
 public class R2dbcProxyAgent {
 
-	private static ProxyConfig proxyConfig = createProxyConfig();
+	private static final String CALLBACK_HANDLER_FIELD = "r2dbcProxy$callbackHandler";
+
+	private static final String FILE_SINK_PREFIX = "file:";
+
+	private static final String BINARY_SINK_PREFIX = "binary:";
 
 	/**
-	 * Configure the given {@link ProxyConfig}.
+	 * Packages that never contain {@link ConnectionFactory} implementations to instrument.
+	 * Spring, r2dbc-pool and r2dbc-proxy classes that delegate to another {@link ConnectionFactory}
+	 * are also excluded, so that connections are not proxied twice.
+	 * Other delegating implementations are still instrumented together with the driver. Use
+	 * {@code driverPackages} or {@code typePattern} to instrument only the driver.
 	 */
-	private static ProxyConfig createProxyConfig() {
+	private static final String[] IGNORED_PACKAGES = {
+			"java.", "javax.", "jdk.", "sun.", "com.sun.",
+			"kotlin.", "scala.", "groovy.",
+			"org.springframework.", "io.netty.", "reactor.", "org.reactivestreams.",
+			"io.micrometer.", "brave.", "zipkin2.",
+			"org.slf4j.", "ch.qos.logback.", "org.apache.", "com.fasterxml.", "org.yaml.",
+			"org.hibernate.", "org.aspectj.", "org.jboss.", "com.google.",
+			"net.bytebuddy.", "io.r2dbc.spi.", "io.r2dbc.pool.", "io.r2dbc.proxy.", "io.r2dbc.examples.agent."
+	};
 
-		// as an example, printing out any method interactions and executed query.
+	private static final InstrumentationStatistics statistics = new InstrumentationStatistics();
 
-		QueryExecutionInfoFormatter queryFormatter = QueryExecutionInfoFormatter.showAll();
-		MethodExecutionInfoFormatter formatter = MethodExecutionInfoFormatter.withDefault();
+	private static ProxyConfig proxyConfig = createProxyConfig(AgentOptions.parse(null));
 
-		ProxyConfig.Builder builder = ProxyConfig.builder();
+	/**
+	 * Create {@link ProxyConfig} with listeners selected by the given {@link AgentOptions}.
+	 */
+	static ProxyConfig createProxyConfig(AgentOptions options) {
 
-		builder.listener(new ProxyExecutionListener() {
-			@Override
-			public void beforeMethod(MethodExecutionInfo executionInfo) {
-				System.out.println("Before >> " + formatter.format(executionInfo));
-			}
+		String sink = options.getSink();
+		ListenerMode mode = options.getMode();
 
-			@Override
-			public void afterMethod(MethodExecutionInfo executionInfo) {
-				System.out.println("After  >> " + formatter.format(executionInfo));
-			}
+		ProxyConfig.Builder builder = ProxyConfig.builder();
 
-			@Override
-			public void afterQuery(QueryExecutionInfo execInfo) {
-				System.out.println(queryFormatter.format(execInfo));
+		if (sink.startsWith(BINARY_SINK_PREFIX)) {
+			if (mode == ListenerMode.METRICS) {
+				throw new IllegalArgumentException("Binary " + AgentOptions.SINK + " is not available for " + mode + " mode");
 			}
-		});
-
-		// To add LifeCycleListener, it needs to be wrapped by LifeCycleExecutionListener
-		builder.listener(new LifeCycleListener() {
-			@Override
-			public void afterCreateOnConnectionFactory(MethodExecutionInfo methodExecutionInfo) {
-				String msg = format(">> Connection acquired. took=%sms", methodExecutionInfo.getExecuteDuration().toMillis());
-				System.out.println(msg);
-			}
-		});
+			BinaryEventSink eventSink = openBinarySink(sink.substring(BINARY_SINK_PREFIX.length()), options.getRingSize());
+			builder.listener(new BinaryEventListener(eventSink, mode == ListenerMode.LOG, options.getSample(), options.getSlowMs()));
+		}
+		else if (mode == ListenerMode.METRICS) {
+			PrintStream out = openSink(sink);
+			MetricsSummaryListener listener = new MetricsSummaryListener(out, options.getSlowMs(), options.getSummaryIntervalSec());
+			listener.start();
+			builder.listener(listener);
+		}
+		else {
+			PrintStream out = openSink(sink);
+			builder.listener(new LoggingExecutionListener(out, mode == ListenerMode.LOG, options.getSample(), options.getSlowMs()));
+		}
 
 		// Optional: use ByteBuddy to create proxies
 		builder.proxyFactoryFactory(ByteBuddyProxyFactory::new);
@@ -84,47 +127,182 @@ public class R2dbcProxyAgent {
 		return builder.build();
 	}
 
+	private static BinaryEventSink openBinarySink(String path, int capacity) {
+		BinaryEventSink eventSink;
+		try {
+			eventSink = BinaryEventSink.open(Paths.get(path), capacity);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Cannot open " + AgentOptions.SINK + ": " + BINARY_SINK_PREFIX + path, e);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(eventSink::close, "r2dbc-proxy-agent-binary-sink-close"));
+		return eventSink;
+	}
+
+	/**
+	 * Open the output for {@code stdout}, {@code stderr} or {@code file:<path>}.
+	 *
+	 * Output to a file is buffered, and flushed every second and at shutdown.
+	 */
+	private static PrintStream openSink(String sink) {
+		if ("stdout".equals(sink)) {
+			return System.out;
+		}
+		if ("stderr".equals(sink)) {
+			return System.err;
+		}
+		if (sink.startsWith(FILE_SINK_PREFIX)) {
+			String path = sink.substring(FILE_SINK_PREFIX.length());
+			PrintStream out;
+			try {
+				out = new PrintStream(new BufferedOutputStream(new FileOutputStream(path, true)), false, "UTF-8");
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("Cannot open " + AgentOptions.SINK + ": " + sink, e);
+			}
+			ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "r2dbc-proxy-agent-flush");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(out::flush, 1, 1, TimeUnit.SECONDS);
+			Runtime.getRuntime().addShutdownHook(new Thread(out::flush, "r2dbc-proxy-agent-flush-on-shutdown"));
+			return out;
+		}
+		throw new IllegalArgumentException("Unknown " + AgentOptions.SINK + ": " + sink);
+	}
 
 	public static void premain(String arg, Instrumentation inst) {
 
+		AgentOptions options = AgentOptions.parse(arg);
+
 		System.out.println("\n\n\n");
 		System.out.println("*****************************");
 		System.out.println(">>> Java Agent Activated <<<");
 		System.out.println("*****************************");
+		System.out.println("Instrumentation: " + options.getInstrumentationMode());
+		System.out.println("Mode: " + options.getMode() + ", Sink: " + options.getSink());
 		System.out.println("\n\n\n");
 
-		instrument(inst);
+		proxyConfig = createProxyConfig(options);
+
+		instrument(inst, options);
 	}
 
-	private static void instrument(Instrumentation inst) {
+	private static void instrument(Instrumentation inst, AgentOptions options) {
 		// intercept methods defined on ConnectionFactory
 		new AgentBuilder.Default()
-				.type(isSubTypeOf(ConnectionFactory.class))
-				.transform((builder, typeDescription, classLoader, module) -> builder
-						.method(named("create").or(named("getMetadata")))
-						.intercept(to(ConnectionFactoryInterceptor.class))
-				)
+				// reuse parsed type descriptions per class loader while resolving type hierarchies
+				.with(new WeakTypePoolCache())
+				.with(statistics)
+				.ignore(any(), isBootstrapClassLoader().or(isExtensionClassLoader()))
+				.or(statistics.countExcluded(getIgnoredTypes()))
+				.type(getConnectionFactoryTypes(options))
+				.transform((builder, typeDescription, classLoader, module) -> {
+					if (options.getInstrumentationMode() == InstrumentationMode.ADVICE) {
+						return adviceConnectionFactory(builder);
+					}
+					return instrumentConnectionFactory(builder);
+				})
 				.installOn(inst);
 
+		if (options.isStatistics()) {
+			Thread thread = new Thread(() -> System.out.println(statistics.format()), "r2dbc-proxy-agent-statistics");
+			Runtime.getRuntime().addShutdownHook(thread);
+		}
+	}
+
+	static ElementMatcher.Junction<TypeDescription> getIgnoredTypes() {
+		ElementMatcher.Junction<TypeDescription> matcher = isSynthetic();
+		for (String ignoredPackage : IGNORED_PACKAGES) {
+			matcher = matcher.or(nameStartsWith(ignoredPackage));
+		}
+		return matcher;
 	}
 
 	/**
-	 * Interceptor implementation.
+	 * Name based conditions are evaluated first, since checking the type hierarchy requires
+	 * resolving super types.
+	 * Interfaces are excluded since a field cannot be added to them.
+	 */
+	static ElementMatcher.Junction<TypeDescription> getConnectionFactoryTypes(AgentOptions options) {
+		ElementMatcher.Junction<TypeDescription> matcher = not(isInterface());
+
+		List<String> driverPackages = options.getDriverPackages();
+		if (!driverPackages.isEmpty()) {
+			ElementMatcher.Junction<TypeDescription> packageMatcher = none();
+			for (String driverPackage : driverPackages) {
+				packageMatcher = packageMatcher.or(nameStartsWith(driverPackage));
+			}
+			matcher = matcher.and(packageMatcher);
+		}
+
+		String typePattern = options.getTypePattern();
+		if (typePattern != null) {
+			matcher = matcher.and(nameMatches(typePattern));
+		}
+
+		return matcher.and(isSubTypeOf(ConnectionFactory.class));
+	}
+
+	/**
+	 * @return statistics of types discovered, ignored and transformed by the agent
+	 */
+	public static InstrumentationStatistics getInstrumentationStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Apply the instrumentation to a {@link ConnectionFactory} implementation.
 	 *
-	 * Intercept {@link ConnectionFactory#create()} and{@link ConnectionFactory#getMetadata()}
-	 * methods. Then, perform proxy invocation logic.
-	 * The returned object is a proxy object and any interaction to it triggers callback
-	 * for listeners from r2dbc-proxy framework.
-	 * In other words, this is the entry point to the r2dbc-proxy framework.
+	 * A field to keep the {@link ConnectionFactoryCallbackHandler} is added to the class, so that
+	 * the handler is created once per {@link ConnectionFactory} instance and collected together
+	 * with it.
 	 */
-	@SuppressWarnings("unchecked")
-	public static class ConnectionFactoryInterceptor {
+	public static <T> DynamicType.Builder<T> instrumentConnectionFactory(DynamicType.Builder<T> builder) {
+		return defineCallbackHandlerField(builder)
+				.method(named("create").or(named("getMetadata")))
+				.intercept(to(ConnectionFactoryInterceptor.class));
+	}
 
-		@RuntimeType
-		public static Object intercept(@AllArguments Object[] args,
-				@This ConnectionFactory connectionFactory, @Origin Method method,
-				@SuperCall Callable<?> callable) throws Throwable {
+	/**
+	 * Apply the instrumentation to a {@link ConnectionFactory} implementation using {@link Advice}.
+	 *
+	 * Instead of delegating to an interceptor, the code of {@link ConnectionFactoryAdvice} is
+	 * inlined into the declared {@link ConnectionFactory#create()} and
+	 * {@link ConnectionFactory#getMetadata()} methods. Inherited methods are not instrumented.
+	 */
+	public static <T> DynamicType.Builder<T> adviceConnectionFactory(DynamicType.Builder<T> builder) {
+		return defineCallbackHandlerField(builder)
+				.visit(Advice.to(ConnectionFactoryAdvice.class)
+						.on(named("create").or(named("getMetadata")).and(takesArguments(0)).and(not(isAbstract()))));
+	}
+
+	private static <T> DynamicType.Builder<T> defineCallbackHandlerField(DynamicType.Builder<T> builder) {
+		return builder
+				.defineField(CALLBACK_HANDLER_FIELD, ConnectionFactoryCallbackHandler.class,
+						Visibility.PRIVATE, FieldPersistence.TRANSIENT, FieldManifestation.VOLATILE)
+				.implement(CallbackHandlerAccessor.class)
+				.intercept(FieldAccessor.ofField(CALLBACK_HANDLER_FIELD));
+	}
+
+	public static ProxyConfig getProxyConfig() {
+		return proxyConfig;
+	}
 
+	/**
+	 * Replace the {@link ProxyConfig}. Only affects {@link ConnectionFactory} instances that have
+	 * not been used yet. Instances already in use keep the callback handler created with the
+	 * previous {@link ProxyConfig}.
+	 */
+	public static void setProxyConfig(ProxyConfig proxyConfig) {
+		R2dbcProxyAgent.proxyConfig = proxyConfig;
+	}
+
+	private static ConnectionFactoryCallbackHandler getCallbackHandler(ConnectionFactory connectionFactory) {
+		CallbackHandlerAccessor accessor = (CallbackHandlerAccessor) connectionFactory;
+		ConnectionFactoryCallbackHandler handler = accessor.getR2dbcProxyCallbackHandler();
+		if (handler == null) {
 			// Create callback handler for ConnectionFactory methods.
 			// Also, update invocation strategy to directly returns the target object.
 
@@ -133,14 +311,75 @@ public class R2dbcProxyAgent {
 			// However, for ByteBuddy, again the call get intercepted. So, it becomes
 			// infinite loop of interceptions.
 
-			ConnectionFactoryCallbackHandler handler = new ConnectionFactoryCallbackHandler(connectionFactory, proxyConfig);
+			// When multiple threads reach here, one of the handlers is kept. They are equivalent.
+			handler = new ConnectionFactoryCallbackHandler(connectionFactory, proxyConfig);
 			handler.setMethodInvocationStrategy((invokedMethod, invokedTarget, invokedArgs) -> {
-				return callable.call();  // retrieve original result
+				return OriginalInvocation.proceed(invokedMethod);  // retrieve original result
 			});
+			accessor.setR2dbcProxyCallbackHandler(handler);
+		}
+		return handler;
+	}
 
+	/**
+	 * {@link AgentBuilder.PoolStrategy} that caches type descriptions per class loader.
+	 * Class loaders are weakly referenced, so that the cache does not prevent them from being
+	 * garbage collected(e.g. on redeploy).
+	 */
+	private static class WeakTypePoolCache extends AgentBuilder.PoolStrategy.WithTypePoolCache {
+
+		private final Map<ClassLoader, TypePool.CacheProvider> cacheProviders = Collections.synchronizedMap(new WeakHashMap<>());
 
-			// currently proxy argument(first arg) is not used. just passing fake object.
-			Object result = handler.invoke("", method, args);
+		private final TypePool.CacheProvider bootstrapCacheProvider = new TypePool.CacheProvider.Simple();
+
+		WeakTypePoolCache() {
+			super(TypePool.Default.ReaderMode.FAST);
+		}
+
+		@Override
+		protected TypePool.CacheProvider locate(ClassLoader classLoader) {
+			if (classLoader == null) {
+				return this.bootstrapCacheProvider;
+			}
+			return this.cacheProviders.computeIfAbsent(classLoader, key -> new TypePool.CacheProvider.Simple());
+		}
+	}
+
+	/**
+	 * Accessor for the {@link ConnectionFactoryCallbackHandler} field added to instrumented
+	 * {@link ConnectionFactory} classes.
+	 */
+	public interface CallbackHandlerAccessor {
+
+		ConnectionFactoryCallbackHandler getR2dbcProxyCallbackHandler();
+
+		void setR2dbcProxyCallbackHandler(ConnectionFactoryCallbackHandler callbackHandler);
+
+	}
+
+	/**
+	 * Interceptor implementation.
+	 *
+	 * Intercept {@link ConnectionFactory#create()} and{@link ConnectionFactory#getMetadata()}
+	 * methods. Then, perform proxy invocation logic.
+	 * The returned object is a proxy object and any interaction to it triggers callback
+	 * for listeners from r2dbc-proxy framework.
+	 * In other words, this is the entry point to the r2dbc-proxy framework.
+	 *
+	 * The callback handler is created once per {@link ConnectionFactory}. The original method
+	 * call({@link SuperCall}) differs per invocation; therefore, it is passed to the handler's
+	 * invocation strategy by {@link OriginalInvocation}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static class ConnectionFactoryInterceptor {
+
+		@RuntimeType
+		public static Object intercept(@AllArguments Object[] args,
+				@This ConnectionFactory connectionFactory, @Origin Method method,
+				@SuperCall Callable<?> callable) throws Throwable {
+
+			ConnectionFactoryCallbackHandler handler = getCallbackHandler(connectionFactory);
+			Object result = OriginalInvocation.invoke(handler, method, args, callable, null);
 
 
 			String methodName = method.getName();
@@ -167,4 +406,121 @@ public class R2dbcProxyAgent {
 		}
 	}
 
+	/**
+	 * Advice implementation.
+	 *
+	 * {@link #exit} is inlined at the end of {@link ConnectionFactory#create()} and
+	 * {@link ConnectionFactory#getMetadata()} of the driver. The original method has already been
+	 * invoked, then the returned value is replaced by the result of the callback handler.
+	 * Therefore, no callable or argument array is created per call.
+	 *
+	 * The callback handler of {@code getMetadata()} does not include the time of the original
+	 * method, since it has already returned.
+	 */
+	@SuppressWarnings("unchecked")
+	public static class ConnectionFactoryAdvice {
+
+		private static final Object[] NO_ARGS = new Object[0];
+
+		private static final Method CREATE_METHOD;
+
+		private static final Method GET_METADATA_METHOD;
+
+		static {
+			try {
+				CREATE_METHOD = ConnectionFactory.class.getMethod("create");
+				GET_METADATA_METHOD = ConnectionFactory.class.getMethod("getMetadata");
+			}
+			catch (NoSuchMethodException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Advice.OnMethodExit
+		public static void exit(@Advice.This ConnectionFactory connectionFactory,
+				@Advice.Origin("#m") String methodName,
+				@Advice.Return(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object returned) throws Throwable {
+			returned = onExit(connectionFactory, methodName, returned);
+		}
+
+		/**
+		 * Called from the inlined advice code. Needs to be public since it is called from driver classes.
+		 */
+		public static Object onExit(ConnectionFactory connectionFactory, String methodName, Object returned) throws Throwable {
+			ConnectionFactoryCallbackHandler handler = getCallbackHandler(connectionFactory);
+
+			if ("getMetadata".equals(methodName)) {
+				return OriginalInvocation.invoke(handler, GET_METADATA_METHOD, NO_ARGS, null, returned);
+			}
+
+			Object result = OriginalInvocation.invoke(handler, CREATE_METHOD, NO_ARGS, null, returned);
+
+			// same as "ConnectionFactoryInterceptor", the returned value is assigned to the declared
+			// return type of the driver. Convert to Mono when the driver returned Mono.
+			if (returned instanceof Mono) {
+				return Mono.from((Publisher<? extends Connection>) result);
+			}
+			return result;  // return as Flux
+		}
+	}
+
+	/**
+	 * Per-thread holder of the original method invocation for the callback handler.
+	 *
+	 * The callback handler is shared per {@link ConnectionFactory}, and its invocation strategy
+	 * retrieves the original result from here. Either a callable to invoke the original method
+	 * or the already returned value is held while the handler is invoked.
+	 *
+	 * This relies on r2dbc-proxy calling the invocation strategy synchronously on the calling
+	 * thread within {@link ConnectionFactoryCallbackHandler#invoke}, which is the case for
+	 * r2dbc-proxy 0.8.x(verified with 0.8.2.RELEASE, managed by Spring Boot 2.3). If a later
+	 * version defers the call(e.g. to subscription time or another thread), the original
+	 * invocation is no longer available and {@link #proceed} throws {@link IllegalStateException}.
+	 */
+	static final class OriginalInvocation {
+
+		private static final ThreadLocal<OriginalInvocation> CURRENT = ThreadLocal.withInitial(OriginalInvocation::new);
+
+		private boolean available;
+
+		private Callable<?> callable;
+
+		private Object result;
+
+		static Object invoke(ConnectionFactoryCallbackHandler handler, Method method, Object[] args,
+				Callable<?> callable, Object result) throws Throwable {
+			OriginalInvocation current = CURRENT.get();
+
+			// keep the previous one for nested calls. e.g. instrumented ConnectionFactory
+			// delegates to another instrumented ConnectionFactory
+			boolean previousAvailable = current.available;
+			Callable<?> previousCallable = current.callable;
+			Object previousResult = current.result;
+
+			current.available = true;
+			current.callable = callable;
+			current.result = result;
+			try {
+				// currently proxy argument(first arg) is not used. just passing fake object.
+				return handler.invoke("", method, args);
+			}
+			finally {
+				current.available = previousAvailable;
+				current.callable = previousCallable;
+				current.result = previousResult;
+			}
+		}
+
+		static Object proceed(Method invokedMethod) throws Exception {
+			OriginalInvocation current = CURRENT.get();
+			if (!current.available) {
+				throw new IllegalStateException("Original method call is not available for " + invokedMethod);
+			}
+			if (current.callable != null) {
+				return current.callable.call();
+			}
+			return current.result;
+		}
+	}
+
 }
@@ -0,0 +1,105 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.examples.agent.AgentOptions.InstrumentationMode;
+import io.r2dbc.examples.agent.AgentOptions.ListenerMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test for {@link AgentOptions}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class AgentOptionsTest {
+
+    @Test
+    void defaults() {
+        AgentOptions options = AgentOptions.parse(null);
+
+        assertThat(options.getOptions()).isEmpty();
+        assertThat(options.getInstrumentationMode()).isEqualTo(InstrumentationMode.DELEGATION);
+        assertThat(options.getDriverPackages()).isEmpty();
+        assertThat(options.getTypePattern()).isNull();
+        assertThat(options.isStatistics()).isTrue();
+        assertThat(options.getMode()).isEqualTo(ListenerMode.LOG);
+        assertThat(options.getSample()).isEqualTo(1);
+        assertThat(options.getSlowMs()).isEqualTo(0);
+        assertThat(options.getSink()).isEqualTo("stdout");
+        assertThat(options.getRingSize()).isEqualTo(1 << 20);
+        assertThat(options.getSummaryIntervalSec()).isEqualTo(60);
+
+        assertThat(AgentOptions.parse(" ").getOptions()).isEmpty();
+    }
+
+    @Test
+    void parse() {
+        AgentOptions options = AgentOptions.parse("instrumentation=advice, mode=Metrics,sample=0.01,slowMs=200,"
+                + "sink=file:/tmp/r2dbc.log,statistics=false,ringSize=1024,summaryIntervalSec=10,typePattern=.*H2.*");
+
+        assertThat(options.getInstrumentationMode()).isEqualTo(InstrumentationMode.ADVICE);
+        assertThat(options.getMode()).isEqualTo(ListenerMode.METRICS);
+        assertThat(options.getSample()).isEqualTo(0.01);
+        assertThat(options.getSlowMs()).isEqualTo(200);
+        assertThat(options.getSink()).isEqualTo("file:/tmp/r2dbc.log");
+        assertThat(options.isStatistics()).isFalse();
+        assertThat(options.getRingSize()).isEqualTo(1024);
+        assertThat(options.getSummaryIntervalSec()).isEqualTo(10);
+        assertThat(options.getTypePattern()).isEqualTo(".*H2.*");
+    }
+
+    @Test
+    void driverPackages() {
+        AgentOptions options = AgentOptions.parse("driverPackages=io.r2dbc.h2: io.r2dbc.postgresql.::");
+        assertThat(options.getDriverPackages()).containsExactly("io.r2dbc.h2.", "io.r2dbc.postgresql.");
+    }
+
+    @Test
+    void slowMsForSlowMode() {
+        assertThat(AgentOptions.parse("mode=slow").getSlowMs()).isEqualTo(1000);
+        assertThat(AgentOptions.parse("mode=slow,slowMs=200").getSlowMs()).isEqualTo(200);
+        assertThat(AgentOptions.parse("mode=query").getSlowMs()).isEqualTo(0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"mode", "=log", "mode=log,,sample=1", "mode=log,sample"})
+    void malformed(String arg) {
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse(arg))
+                .withMessageContaining("key=value");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"sample=-0.1", "sample=1.5", "sample=foo"})
+    void invalidSample(String arg) {
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse(arg).getSample());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ringSize=0", "ringSize=-1", "ringSize=foo"})
+    void invalidRingSize(String arg) {
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse(arg).getRingSize());
+    }
+
+    @Test
+    void ringSizeOverMaxCapacity() {
+        AgentOptions options = AgentOptions.parse("ringSize=" + (BinaryEventSink.MAX_CAPACITY + 1L));
+        assertThatIllegalArgumentException().isThrownBy(options::getRingSize);
+        assertThat(AgentOptions.parse("ringSize=" + BinaryEventSink.MAX_CAPACITY).getRingSize())
+                .isEqualTo(BinaryEventSink.MAX_CAPACITY);
+    }
+
+    @Test
+    void invalidValues() {
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse("mode=foo").getMode())
+                .withMessage("Unknown mode: foo");
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse("instrumentation=foo").getInstrumentationMode())
+                .withMessage("Unknown instrumentation: foo");
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse("slowMs=foo").getSlowMs())
+                .withMessage("Invalid slowMs: foo");
+        assertThatIllegalArgumentException().isThrownBy(() -> AgentOptions.parse("summaryIntervalSec=0").getSummaryIntervalSec());
+    }
+
+}
@@ -0,0 +1,122 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link BinaryEventSink} and {@link BinaryEventDecoder}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class BinaryEventSinkTest {
+
+    private static final Method CREATE_METHOD = getMethod(ConnectionFactory.class, "create");
+
+    private static final Method CREATE_STATEMENT_METHOD = getMethod(Connection.class, "createStatement", String.class);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void layout() throws Exception {
+        Path path = this.tempDir.resolve("events.bin");
+        BinaryEventSink sink = BinaryEventSink.open(path, 4);
+        sink.offer(1000L, "10", CREATE_METHOD, null, 2000L, false);
+        sink.offer(3000L, "foo", CREATE_STATEMENT_METHOD, Collections.singletonList(new QueryInfo("SELECT 1")), 4000L, true);
+        sink.close();
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertThat(buffer.limit()).isEqualTo(64 + 4 * 32);
+
+        // header
+        assertThat(buffer.getInt(0)).isEqualTo(0x52325058);
+        assertThat(buffer.getInt(4)).isEqualTo(1);
+        assertThat(buffer.getInt(8)).isEqualTo(32);
+        assertThat(buffer.getInt(12)).isEqualTo(4);
+        assertThat(buffer.getLong(16)).isEqualTo(2);
+        assertThat(buffer.getLong(24)).isEqualTo(0);
+
+        // first record right after the header
+        assertThat(buffer.getLong(64)).isEqualTo(1000L);
+        assertThat(buffer.getLong(64 + 8)).isEqualTo(10L);
+        assertThat(buffer.getLong(64 + 16)).isEqualTo(2000L);
+        assertThat(buffer.getInt(64 + 24)).isEqualTo(0);
+        assertThat(buffer.getInt(64 + 28)).isEqualTo(-1);
+
+        // second record. non-numeric connection id and failed flag
+        assertThat(buffer.getLong(96)).isEqualTo(3000L);
+        assertThat(buffer.getLong(96 + 8)).isEqualTo(-1L);
+        assertThat(buffer.getLong(96 + 16)).isEqualTo(4000L);
+        assertThat(buffer.getInt(96 + 24)).isEqualTo(1 | 0x80000000);
+        assertThat(buffer.getInt(96 + 28)).isEqualTo(0);
+
+        assertThat(Files.readAllLines(Paths.get(path + ".dict"), StandardCharsets.UTF_8))
+                .containsExactly("M\t0\tConnectionFactory#create", "M\t1\tConnection#createStatement", "Q\t0\tSELECT 1");
+    }
+
+    @Test
+    void decode() throws Exception {
+        Path path = this.tempDir.resolve("events.bin");
+        BinaryEventSink sink = BinaryEventSink.open(path, 4);
+        sink.offer(1000L, "10", CREATE_METHOD, null, 2000L, false);
+        sink.offer(3000L, null, CREATE_STATEMENT_METHOD, Arrays.asList(new QueryInfo("SELECT 1"), new QueryInfo("SELECT\t2")), 4000L, true);
+        sink.close();
+
+        assertThat(decode(path)).containsExactly(
+                "# records=2 shown=2 dropped=0",
+                "1970-01-01T00:00:01Z conn=10 ConnectionFactory#create took=2us OK",
+                "1970-01-01T00:00:03Z conn=- Connection#createStatement took=4us FAILED query=\"SELECT 1; SELECT\\t2\"");
+    }
+
+    @Test
+    void decodeWrappedRing() throws Exception {
+        Path path = this.tempDir.resolve("events.bin");
+        BinaryEventSink sink = BinaryEventSink.open(path, 2);
+        sink.offer(1000L, "1", CREATE_METHOD, null, 1000L, false);
+        sink.offer(2000L, "2", CREATE_METHOD, null, 1000L, false);
+        sink.offer(3000L, "3", CREATE_METHOD, null, 1000L, false);
+        sink.close();
+
+        // the oldest record is overwritten by the third one
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        assertThat(buffer.getLong(16)).isEqualTo(3);
+        assertThat(buffer.getLong(64)).isEqualTo(3000L);
+
+        assertThat(decode(path)).containsExactly(
+                "# records=3 shown=2 dropped=0",
+                "1970-01-01T00:00:02Z conn=2 ConnectionFactory#create took=1us OK",
+                "1970-01-01T00:00:03Z conn=3 ConnectionFactory#create took=1us OK");
+    }
+
+    private static String[] decode(Path path) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryEventDecoder.decode(path, new PrintStream(out, true, "UTF-8"));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).split(System.lineSeparator());
+    }
+
+    private static Method getMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        }
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
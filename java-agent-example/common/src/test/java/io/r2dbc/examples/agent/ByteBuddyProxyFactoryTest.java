@@ -0,0 +1,304 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory.CallbackHandlerProxy;
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory.DispatchMode;
+import io.r2dbc.examples.agent.ByteBuddyProxyFactory.ProxyInstantiator;
+import io.r2dbc.proxy.callback.CallbackHandler;
+import io.r2dbc.proxy.callback.ProxyConfig;
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.core.StatementInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.spi.Batch;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link ByteBuddyProxyFactory}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class ByteBuddyProxyFactoryTest {
+
+    private List<String> calls = new ArrayList<>();
+
+    @Test
+    void instantiator() throws Throwable {
+        ByteBuddy byteBuddy = new ByteBuddy();
+        DynamicType.Unloaded<?> proxyType = ByteBuddyProxyFactory.makeProxyType(byteBuddy, Connection.class, DispatchMode.CALLBACK_HANDLER, null);
+        Class<?> instantiatorClass = ByteBuddyProxyFactory.makeInstantiatorType(byteBuddy, proxyType.getTypeDescription(), null)
+                .include(proxyType)
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+
+        @SuppressWarnings("unchecked")
+        ProxyInstantiator<Connection> instantiator = (ProxyInstantiator<Connection>) instantiatorClass.getDeclaredConstructor().newInstance();
+
+        Connection target = mock(Connection.class);
+        CallbackHandler callbackHandler = mock(CallbackHandler.class);
+        Connection proxy = instantiator.newInstance(callbackHandler, target);
+
+        assertThat(proxy).isInstanceOf(CallbackHandlerProxy.class);
+        assertThat(proxy.getClass().getName()).isEqualTo(proxyType.getTypeDescription().getName());
+
+        // constructor passes the callback handler to the base class
+        proxy.close();
+        verify(callbackHandler).invoke(any(), any(), any());
+    }
+
+    @Test
+    void wrap() {
+        ProxyConfig proxyConfig = createProxyConfig(DispatchMode.CALLBACK_HANDLER);
+
+        Result result = mock(Result.class);
+        Statement statement = mock(Statement.class, RETURNS_SELF);
+        doReturn(Flux.just(result)).when(statement).execute();
+        Batch batch = mock(Batch.class, RETURNS_SELF);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement("SELECT 1")).thenReturn(statement);
+        when(connection.createBatch()).thenReturn(batch);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        doReturn(Mono.just(connection)).when(connectionFactory).create();
+
+        ConnectionFactory proxyConnectionFactory = proxyConfig.getProxyFactory().wrapConnectionFactory(connectionFactory);
+        assertThat(proxyConnectionFactory).isInstanceOf(CallbackHandlerProxy.class);
+
+        Connection proxyConnection = Mono.from(proxyConnectionFactory.create()).block();
+        assertThat(proxyConnection).isInstanceOf(CallbackHandlerProxy.class);
+        assertThat(proxyConnection.createBatch()).isInstanceOf(CallbackHandlerProxy.class);
+
+        Statement proxyStatement = proxyConnection.createStatement("SELECT 1");
+        assertThat(proxyStatement).isInstanceOf(CallbackHandlerProxy.class);
+        assertThat(Flux.from(proxyStatement.execute()).blockFirst()).isInstanceOf(CallbackHandlerProxy.class);
+
+        // calls on the proxy go through the callback handler to the target
+        this.calls.clear();
+        proxyConnection.isAutoCommit();
+        verify(connection).isAutoCommit();
+        assertThat(this.calls).containsExactly("before:isAutoCommit", "after:isAutoCommit");
+    }
+
+    @Test
+    void directBind() {
+        List<QueryExecutionInfo> queries = new ArrayList<>();
+        Statement statement = mock(Statement.class, RETURNS_SELF);
+        Statement proxyStatement = createProxyStatement(DispatchMode.DIRECT_BIND, statement, queries);
+
+        this.calls.clear();
+        Statement bound = proxyStatement.bind("$1", 100).bindNull("$2", String.class);
+
+        // returns the proxy, not the target, so that "execute" is still observed
+        assertThat(bound).isSameAs(proxyStatement);
+        verify(statement).bind("$1", 100);
+        verify(statement).bindNull("$2", String.class);
+        assertThat(this.calls).isEmpty();
+
+        Flux.from(bound.execute()).blockLast();
+        assertThat(this.calls).containsExactly("before:execute", "after:execute");
+
+        // bindings are not observed
+        assertThat(queries).hasSize(1);
+        assertThat(queries.get(0).getQueries()).flatExtracting(QueryInfo::getBindingsList).isEmpty();
+    }
+
+    @Test
+    void bindWithCallbackHandler() {
+        List<QueryExecutionInfo> queries = new ArrayList<>();
+        Statement statement = mock(Statement.class, RETURNS_SELF);
+        Statement proxyStatement = createProxyStatement(DispatchMode.CALLBACK_HANDLER, statement, queries);
+
+        this.calls.clear();
+        Statement bound = proxyStatement.bind("$1", 100);
+
+        assertThat(bound).isSameAs(proxyStatement);
+        verify(statement).bind("$1", 100);
+        assertThat(this.calls).containsExactly("before:bind", "after:bind");
+
+        Flux.from(bound.execute()).blockLast();
+        assertThat(queries).hasSize(1);
+        assertThat(queries.get(0).getQueries()).flatExtracting(QueryInfo::getBindingsList).hasSize(1);
+    }
+
+    @Test
+    void proxyClassesSharedByFactories() {
+        ConnectionInfo connectionInfo = mock(ConnectionInfo.class);
+        StatementInfo statementInfo = mock(StatementInfo.class);
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+
+        ByteBuddyProxyFactory factory = new ByteBuddyProxyFactory(createProxyConfig(DispatchMode.CALLBACK_HANDLER));
+        ByteBuddyProxyFactory anotherFactory = new ByteBuddyProxyFactory(createProxyConfig(DispatchMode.CALLBACK_HANDLER));
+        ByteBuddyProxyFactory directBindFactory = new ByteBuddyProxyFactory(createProxyConfig(DispatchMode.DIRECT_BIND), DispatchMode.DIRECT_BIND);
+
+        assertThat(anotherFactory.wrapConnection(connection, connectionInfo).getClass())
+                .isSameAs(factory.wrapConnection(connection, connectionInfo).getClass());
+        assertThat(anotherFactory.wrapStatement(statement, statementInfo, connectionInfo).getClass())
+                .isSameAs(factory.wrapStatement(statement, statementInfo, connectionInfo).getClass());
+
+        // cached per dispatch mode
+        assertThat(directBindFactory.wrapStatement(statement, statementInfo, connectionInfo).getClass())
+                .isNotSameAs(factory.wrapStatement(statement, statementInfo, connectionInfo).getClass());
+    }
+
+    @Test
+    void generatedClassesCached() throws Exception {
+        // not pre-generated, since the interface is loaded by another class loader
+        Class<?> statementType = new SpiClassLoader().loadClass(Statement.class.getName());
+
+        Class<?> instantiatorClass = ByteBuddyProxyFactory.getInstantiatorClass(new ByteBuddy(), statementType, DispatchMode.CALLBACK_HANDLER);
+        assertThat(instantiatorClass.getClassLoader()).isNotSameAs(ByteBuddyProxyFactory.class.getClassLoader());
+
+        assertThat(ByteBuddyProxyFactory.getInstantiatorClass(new ByteBuddy(), statementType, DispatchMode.CALLBACK_HANDLER))
+                .isSameAs(instantiatorClass);
+        assertThat(ByteBuddyProxyFactory.getInstantiatorClass(new ByteBuddy(), statementType, DispatchMode.DIRECT_BIND))
+                .isNotSameAs(instantiatorClass);
+    }
+
+    @Test
+    void preGeneratedClasses() {
+        ConnectionInfo connectionInfo = mock(ConnectionInfo.class);
+        Statement statement = mock(Statement.class);
+
+        for (DispatchMode dispatchMode : DispatchMode.values()) {
+            ByteBuddyProxyFactory factory = new ByteBuddyProxyFactory(createProxyConfig(dispatchMode), dispatchMode);
+            assertThat(factory.wrapConnection(mock(Connection.class), connectionInfo).getClass().getName())
+                    .isEqualTo(ByteBuddyProxyFactory.getProxyClassName(Connection.class, dispatchMode));
+            assertThat(factory.wrapStatement(statement, mock(StatementInfo.class), connectionInfo).getClass().getName())
+                    .isEqualTo(ByteBuddyProxyFactory.getProxyClassName(Statement.class, dispatchMode));
+
+            Class<?> instantiatorClass = ByteBuddyProxyFactory.findOrCreateInstantiatorClass(new ByteBuddy(), Statement.class,
+                    dispatchMode, ByteBuddyProxyFactory.class.getClassLoader());
+            assertThat(instantiatorClass.getName()).isEqualTo(ByteBuddyProxyFactory.getInstantiatorClassName(Statement.class, dispatchMode));
+        }
+    }
+
+    @Test
+    void generateWhenPreGeneratedClassesMissing() {
+        // class loader that does not have the pre-generated classes
+        ClassLoader classLoader = new ClassLoader(null) {
+        };
+
+        Class<?> instantiatorClass = ByteBuddyProxyFactory.findOrCreateInstantiatorClass(new ByteBuddy(), Statement.class,
+                DispatchMode.CALLBACK_HANDLER, classLoader);
+        assertThat(instantiatorClass.getName())
+                .isNotEqualTo(ByteBuddyProxyFactory.getInstantiatorClassName(Statement.class, DispatchMode.CALLBACK_HANDLER));
+
+        Statement proxy = newProxy(instantiatorClass, mock(Statement.class));
+        assertThat(proxy).isInstanceOf(CallbackHandlerProxy.class);
+    }
+
+    @Test
+    void generateWhenInterfaceLoadedByAnotherClassLoader() throws Exception {
+        Class<?> statementType = new SpiClassLoader().loadClass(Statement.class.getName());
+        assertThat(statementType).isNotSameAs(Statement.class);
+
+        // pre-generated class is found, but implements the interface from another class loader
+        Class<?> instantiatorClass = ByteBuddyProxyFactory.findOrCreateInstantiatorClass(new ByteBuddy(), statementType,
+                DispatchMode.CALLBACK_HANDLER, ByteBuddyProxyFactory.class.getClassLoader());
+        assertThat(instantiatorClass.getName())
+                .isNotEqualTo(ByteBuddyProxyFactory.getInstantiatorClassName(Statement.class, DispatchMode.CALLBACK_HANDLER));
+
+        Object proxy = newProxy(instantiatorClass, mock(statementType));
+        assertThat(proxy).isInstanceOf(statementType).isNotInstanceOf(Statement.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T newProxy(Class<?> instantiatorClass, Object target) {
+        try {
+            ProxyInstantiator<T> instantiator = (ProxyInstantiator<T>) instantiatorClass.getDeclaredConstructor().newInstance();
+            return instantiator.newInstance(mock(CallbackHandler.class), target);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Statement createProxyStatement(DispatchMode dispatchMode, Statement statement, List<QueryExecutionInfo> queries) {
+        doReturn(Flux.empty()).when(statement).execute();
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement("SELECT 1")).thenReturn(statement);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        doReturn(Mono.just(connection)).when(connectionFactory).create();
+
+        ProxyConfig proxyConfig = createProxyConfig(dispatchMode);
+        proxyConfig.addListener(new ProxyExecutionListener() {
+            @Override
+            public void afterQuery(QueryExecutionInfo execInfo) {
+                queries.add(execInfo);
+            }
+        });
+
+        Connection proxyConnection = Mono.from(proxyConfig.getProxyFactory().wrapConnectionFactory(connectionFactory).create()).block();
+        return proxyConnection.createStatement("SELECT 1");
+    }
+
+    private ProxyConfig createProxyConfig(DispatchMode dispatchMode) {
+        return ProxyConfig.builder()
+                .listener(new ProxyExecutionListener() {
+                    @Override
+                    public void beforeMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("before:" + executionInfo.getMethod().getName());
+                    }
+
+                    @Override
+                    public void afterMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("after:" + executionInfo.getMethod().getName());
+                    }
+                })
+                .proxyFactoryFactory(config -> new ByteBuddyProxyFactory(config, dispatchMode))
+                .build();
+    }
+
+    /**
+     * Loads r2dbc-spi classes by itself, and delegates other classes to the parent.
+     */
+    static class SpiClassLoader extends URLClassLoader {
+
+        SpiClassLoader() {
+            super(new URL[]{Statement.class.getProtectionDomain().getCodeSource().getLocation()},
+                    ByteBuddyProxyFactoryTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("io.r2dbc.spi.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                if (type == null) {
+                    type = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(type);
+                }
+                return type;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package io.r2dbc.examples.agent;
+
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.junit.jupiter.api.Test;
+
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link InstrumentationStatistics}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class InstrumentationStatisticsTest {
+
+    @Test
+    void countExcluded() {
+        InstrumentationStatistics statistics = new InstrumentationStatistics();
+        ElementMatcher<TypeDescription> matcher = statistics.countExcluded(nameStartsWith("java."));
+
+        assertThat(matcher.matches(TypeDescription.ForLoadedType.of(String.class))).isTrue();
+        assertThat(matcher.matches(TypeDescription.ForLoadedType.of(Integer.class))).isTrue();
+        assertThat(matcher.matches(TypeDescription.ForLoadedType.of(InstrumentationStatistics.class))).isFalse();
+
+        // only matched types are counted
+        assertThat(statistics.getExcluded()).isEqualTo(2);
+    }
+
+    @Test
+    void counts() {
+        InstrumentationStatistics statistics = new InstrumentationStatistics();
+        TypeDescription type = TypeDescription.ForLoadedType.of(String.class);
+
+        // loading a type triggers loading another type
+        statistics.onDiscovery("foo", null, null, false);
+        statistics.onDiscovery("bar", null, null, false);
+        statistics.onIgnored(type, null, null, false);
+        statistics.onComplete("bar", null, null, false);
+        statistics.onTransformation(type, null, null, false, null);
+        statistics.onComplete("foo", null, null, false);
+
+        statistics.onDiscovery("baz", null, null, false);
+        statistics.onError("baz", null, null, false, new RuntimeException());
+        statistics.onComplete("baz", null, null, false);
+
+        assertThat(statistics.getDiscovered()).isEqualTo(3);
+        assertThat(statistics.getIgnored()).isEqualTo(1);
+        assertThat(statistics.getTransformed()).isEqualTo(1);
+        assertThat(statistics.getErrors()).isEqualTo(1);
+        assertThat(statistics.getExcluded()).isEqualTo(0);
+        assertThat(statistics.format()).startsWith("R2dbcProxyAgent: discovered=3 ignored=1(excluded=0) transformed=1 errors=1 time=");
+    }
+
+}
@@ -0,0 +1,142 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.proxy.core.ExecutionType;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.core.ValueStore;
+import io.r2dbc.proxy.test.MockConnectionInfo;
+import io.r2dbc.proxy.test.MockMethodExecutionInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for {@link LoggingExecutionListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class LoggingExecutionListenerTest {
+
+    private ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private PrintStream out = new PrintStream(this.output, true);
+
+    @Test
+    void methods() throws Exception {
+        LoggingExecutionListener listener = new LoggingExecutionListener(this.out, true, 1, 0);
+        MockMethodExecutionInfo executionInfo = createMethodExecutionInfo(ConnectionFactory.class.getMethod("create"));
+
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+
+        assertThat(getLines()).hasSize(3);
+        assertThat(getLines()[0]).startsWith("Before >> ");
+        assertThat(getLines()[1]).startsWith("After  >> ");
+        assertThat(getLines()[2]).startsWith(">> Connection acquired.");
+    }
+
+    @Test
+    void methodsNotLogged() throws Exception {
+        LoggingExecutionListener listener = new LoggingExecutionListener(this.out, false, 1, 0);
+        MockMethodExecutionInfo executionInfo = createMethodExecutionInfo(ConnectionFactory.class.getMethod("create"));
+
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+
+        assertThat(this.output.toString()).isEmpty();
+    }
+
+    @Test
+    void afterMethodUsesSamplingDecisionOfBeforeMethod() throws Exception {
+        Method method = Connection.class.getMethod("close");
+
+        // not sampled at "beforeMethod"
+        LoggingExecutionListener listener = new LoggingExecutionListener(this.out, true, 0, 0);
+        MockMethodExecutionInfo executionInfo = createMethodExecutionInfo(method);
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+        assertThat(this.output.toString()).isEmpty();
+
+        // "afterMethod" does not sample again without "beforeMethod"
+        listener = new LoggingExecutionListener(this.out, true, 1, 0);
+        listener.afterMethod(createMethodExecutionInfo(method));
+        assertThat(this.output.toString()).isEmpty();
+
+        // before and after are printed out in pairs
+        listener = new LoggingExecutionListener(this.out, true, 0.5, 0);
+        for (int i = 0; i < 100; i++) {
+            executionInfo = createMethodExecutionInfo(method);
+            listener.beforeMethod(executionInfo);
+            listener.afterMethod(executionInfo);
+        }
+        long before = countLines("Before >> ");
+        long after = countLines("After  >> ");
+        assertThat(before).isEqualTo(after).isBetween(1L, 99L);
+    }
+
+    @Test
+    void slowQuery() throws Exception {
+        LoggingExecutionListener listener = new LoggingExecutionListener(this.out, false, 1, 100);
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(99)));
+        assertThat(this.output.toString()).isEmpty();
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(100)));
+        assertThat(getLines()).hasSize(1);
+        assertThat(getLines()[0]).contains("SELECT 1");
+    }
+
+    @Test
+    void queryNotSampled() throws Exception {
+        LoggingExecutionListener listener = new LoggingExecutionListener(this.out, false, 0, 0);
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(100)));
+        assertThat(this.output.toString()).isEmpty();
+    }
+
+    private String[] getLines() {
+        return this.output.toString().split(System.lineSeparator());
+    }
+
+    private long countLines(String prefix) {
+        String output = this.output.toString();
+        if (output.isEmpty()) {
+            return 0;
+        }
+        return Arrays.stream(getLines()).filter(line -> line.startsWith(prefix)).count();
+    }
+
+    private static MockMethodExecutionInfo createMethodExecutionInfo(Method method) {
+        return MockMethodExecutionInfo.builder()
+                .target(mock(method.getDeclaringClass()))
+                .method(method)
+                .connectionInfo(MockConnectionInfo.builder().connectionId("10").build())
+                .executeDuration(Duration.ofMillis(10))
+                .threadName("thread-name")
+                .valueStore(ValueStore.create())
+                .build();
+    }
+
+    private static MockQueryExecutionInfo createQueryExecutionInfo(Duration executeDuration) throws Exception {
+        return MockQueryExecutionInfo.builder()
+                .method(Statement.class.getMethod("execute"))
+                .connectionInfo(MockConnectionInfo.builder().connectionId("10").build())
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .type(ExecutionType.STATEMENT)
+                .executeDuration(executeDuration)
+                .threadName("thread-name")
+                .isSuccess(true)
+                .build();
+    }
+
+}
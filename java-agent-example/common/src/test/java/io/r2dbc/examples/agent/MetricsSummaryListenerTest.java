@@ -0,0 +1,72 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.proxy.core.ValueStore;
+import io.r2dbc.proxy.test.MockMethodExecutionInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for {@link MetricsSummaryListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class MetricsSummaryListenerTest {
+
+    @Test
+    void summarize() throws Exception {
+        MetricsSummaryListener listener = new MetricsSummaryListener(mock(PrintStream.class), 5, 60);
+
+        Method create = ConnectionFactory.class.getMethod("create");
+        listener.afterMethod(createMethodExecutionInfo(create, null));
+        listener.afterMethod(createMethodExecutionInfo(create, new RuntimeException()));
+        listener.afterMethod(createMethodExecutionInfo(Connection.class.getMethod("close"), null));
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(1), true));
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(3), false));
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(10), true));
+
+        assertThat(listener.summarize())
+                .isEqualTo("R2dbcProxyAgent: interval=60s connections=1 queries=3 failed=1 slow=1 avg=4666us max=10000us");
+
+        // counters are reset
+        assertThat(listener.summarize())
+                .isEqualTo("R2dbcProxyAgent: interval=60s connections=0 queries=0 failed=0 slow=0 avg=0us max=0us");
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofMillis(2), true));
+        assertThat(listener.summarize())
+                .isEqualTo("R2dbcProxyAgent: interval=60s connections=0 queries=1 failed=0 slow=0 avg=2000us max=2000us");
+    }
+
+    @Test
+    void slowQueryDisabled() {
+        MetricsSummaryListener listener = new MetricsSummaryListener(mock(PrintStream.class), 0, 60);
+
+        listener.afterQuery(createQueryExecutionInfo(Duration.ofSeconds(10), true));
+        assertThat(listener.summarize()).contains("queries=1 failed=0 slow=0");
+    }
+
+    private static MockMethodExecutionInfo createMethodExecutionInfo(Method method, Throwable thrown) {
+        return MockMethodExecutionInfo.builder()
+                .method(method)
+                .setThrown(thrown)
+                .valueStore(ValueStore.create())
+                .build();
+    }
+
+    private static MockQueryExecutionInfo createQueryExecutionInfo(Duration executeDuration, boolean success) {
+        return MockQueryExecutionInfo.builder()
+                .executeDuration(executeDuration)
+                .isSuccess(success)
+                .build();
+    }
+
+}
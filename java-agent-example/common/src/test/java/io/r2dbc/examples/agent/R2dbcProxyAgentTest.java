@@ -0,0 +1,209 @@
+package io.r2dbc.examples.agent;
+
+import io.r2dbc.proxy.callback.ProxyConfig;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.matcher.ElementMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test for {@link R2dbcProxyAgent}.
+ *
+ * Instead of installing the agent, the same transformations applied by the agent are applied
+ * to {@link StubConnectionFactory}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class R2dbcProxyAgentTest {
+
+    private ProxyConfig originalProxyConfig;
+
+    private List<String> calls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        this.originalProxyConfig = R2dbcProxyAgent.getProxyConfig();
+        R2dbcProxyAgent.setProxyConfig(createProxyConfig(this.calls));
+    }
+
+    @AfterEach
+    void tearDown() {
+        R2dbcProxyAgent.setProxyConfig(this.originalProxyConfig);
+    }
+
+    @Test
+    void createWithInterceptor() throws Exception {
+        Class<?> type = R2dbcProxyAgent.instrumentConnectionFactory(new ByteBuddy().subclass(StubConnectionFactory.class))
+                .make()
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+
+        verifyCreate((ConnectionFactory) type.getConstructor().newInstance());
+    }
+
+    @Test
+    void createWithAdvice() throws Exception {
+        Class<?> type = R2dbcProxyAgent.adviceConnectionFactory(new ByteBuddy().redefine(StubConnectionFactory.class))
+                .make()
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+                .getLoaded();
+
+        verifyCreate((ConnectionFactory) type.getConstructor().newInstance());
+    }
+
+    @Test
+    void getMetadataWithInterceptor() throws Exception {
+        Class<?> type = R2dbcProxyAgent.instrumentConnectionFactory(new ByteBuddy().subclass(StubConnectionFactory.class))
+                .make()
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+        ConnectionFactory connectionFactory = (ConnectionFactory) type.getConstructor().newInstance();
+
+        assertThat(connectionFactory.getMetadata().getName()).isEqualTo("stub");
+        assertThat(this.calls).containsExactly("before:getMetadata", "after:getMetadata");
+    }
+
+    @Test
+    void setProxyConfigAfterUse() throws Exception {
+        Class<?> type = R2dbcProxyAgent.instrumentConnectionFactory(new ByteBuddy().subclass(StubConnectionFactory.class))
+                .make()
+                .load(getClass().getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+        ConnectionFactory used = (ConnectionFactory) type.getConstructor().newInstance();
+        ConnectionFactory unused = (ConnectionFactory) type.getConstructor().newInstance();
+        Mono.from(used.create()).block();
+        this.calls.clear();
+
+        List<String> newCalls = new ArrayList<>();
+        R2dbcProxyAgent.setProxyConfig(createProxyConfig(newCalls));
+
+        // the callback handler of the used instance keeps the previous config
+        Mono.from(used.create()).block();
+        assertThat(this.calls).containsExactly("before:create", "after:create");
+        assertThat(newCalls).isEmpty();
+
+        this.calls.clear();
+        Mono.from(unused.create()).block();
+        assertThat(this.calls).isEmpty();
+        assertThat(newCalls).containsExactly("before:create", "after:create");
+    }
+
+    @Test
+    void connectionFactoryTypes() {
+        TypeDescription stubType = TypeDescription.ForLoadedType.of(StubConnectionFactory.class);
+
+        ElementMatcher<TypeDescription> matcher = R2dbcProxyAgent.getConnectionFactoryTypes(AgentOptions.parse(null));
+        assertThat(matcher.matches(stubType)).isTrue();
+        assertThat(matcher.matches(TypeDescription.ForLoadedType.of(ConnectionFactory.class))).as("interface").isFalse();
+        assertThat(matcher.matches(TypeDescription.ForLoadedType.of(String.class))).isFalse();
+
+        assertThat(matchesConnectionFactoryType("driverPackages=io.r2dbc.h2:io.r2dbc.examples.agent", stubType)).isTrue();
+        assertThat(matchesConnectionFactoryType("driverPackages=io.r2dbc.h2", stubType)).isFalse();
+        assertThat(matchesConnectionFactoryType("typePattern=.*Stub.*", stubType)).isTrue();
+        assertThat(matchesConnectionFactoryType("typePattern=.*H2.*", stubType)).isFalse();
+
+        // both conditions need to match
+        assertThat(matchesConnectionFactoryType("driverPackages=io.r2dbc.examples.agent,typePattern=.*Stub.*", stubType)).isTrue();
+        assertThat(matchesConnectionFactoryType("driverPackages=io.r2dbc.examples.agent,typePattern=.*H2.*", stubType)).isFalse();
+        assertThat(matchesConnectionFactoryType("driverPackages=io.r2dbc.h2,typePattern=.*Stub.*", stubType)).isFalse();
+    }
+
+    @Test
+    void ignoredTypes() {
+        ElementMatcher<TypeDescription> matcher = R2dbcProxyAgent.getIgnoredTypes();
+
+        // delegating connection factories are not instrumented
+        assertThat(matcher.matches(createType("io.r2dbc.pool.ConnectionPool"))).isTrue();
+        assertThat(matcher.matches(createType("io.r2dbc.proxy.ProxyConnectionFactory"))).isTrue();
+        assertThat(matcher.matches(createType("org.springframework.r2dbc.connection.TransactionAwareConnectionFactoryProxy"))).isTrue();
+
+        assertThat(matcher.matches(createType("io.r2dbc.h2.H2ConnectionFactory"))).isFalse();
+        assertThat(matcher.matches(createType("io.r2dbc.postgresql.PostgresqlConnectionFactory"))).isFalse();
+    }
+
+    @Test
+    void invalidSink() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> R2dbcProxyAgent.createProxyConfig(AgentOptions.parse("sink=foo")))
+                .withMessage("Unknown sink: foo");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> R2dbcProxyAgent.createProxyConfig(AgentOptions.parse("mode=metrics,sink=binary:events.bin")))
+                .withMessageContaining("not available for METRICS mode");
+    }
+
+    private static boolean matchesConnectionFactoryType(String arg, TypeDescription type) {
+        return R2dbcProxyAgent.getConnectionFactoryTypes(AgentOptions.parse(arg)).matches(type);
+    }
+
+    private static TypeDescription createType(String name) {
+        return new TypeDescription.Latent(name, Modifier.PUBLIC, TypeDescription.Generic.OBJECT);
+    }
+
+    private void verifyCreate(ConnectionFactory connectionFactory) {
+        Object result = connectionFactory.create();
+        assertThat(result).isInstanceOf(Mono.class);
+        assertThat(this.calls).isEmpty();
+
+        Connection connection = Mono.from(connectionFactory.create()).block();
+        assertThat(connection).isInstanceOf(ByteBuddyProxyFactory.CallbackHandlerProxy.class);
+        assertThat(this.calls).containsExactly("before:create", "after:create");
+
+        // calls on the returned connection are also proxied
+        this.calls.clear();
+        connection.createStatement("SELECT 1");
+        assertThat(this.calls).containsExactly("before:createStatement", "after:createStatement");
+    }
+
+    private static ProxyConfig createProxyConfig(List<String> calls) {
+        return ProxyConfig.builder()
+                .listener(new ProxyExecutionListener() {
+                    @Override
+                    public void beforeMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("before:" + executionInfo.getMethod().getName());
+                    }
+
+                    @Override
+                    public void afterMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("after:" + executionInfo.getMethod().getName());
+                    }
+                })
+                .proxyFactoryFactory(ByteBuddyProxyFactory::new)
+                .build();
+    }
+
+    /**
+     * Needs to be public and not to refer the test class, since it is also loaded by another class loader.
+     */
+    public static class StubConnectionFactory implements ConnectionFactory {
+
+        @Override
+        public Mono<Connection> create() {
+            return Mono.just(mock(Connection.class, RETURNS_MOCKS));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return () -> "stub";
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.examples.MetricsExecutionListener.SlowQueryLogger;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link SlowQueryLogger} that aggregates slow queries by query over a time window.
+ * <p>
+ * Instead of logging each slow query, count, total, max and mean duration are aggregated
+ * by query, and one summary of the top-K queries by total duration is logged per window.
+ * When many queries become slow at once, such as a database brownout, this produces a
+ * log line per window instead of per query.
+ * <p>
+ * To bound the memory, queries beyond {@code maxDistinctQueries} in a window are aggregated
+ * as {@value #OTHER_QUERIES}.
+ * <p>
+ * When a window is swapped out while a query is being recorded, {@link #flush()} waits for
+ * the recording to complete. A query that arrives after the swap is recorded to the new window.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class AggregatingSlowQueryLogger implements SlowQueryLogger, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AggregatingSlowQueryLogger.class);
+
+	public static final String OTHER_QUERIES = "(other queries)";
+
+	private final Duration window;
+
+	private final int topK;
+
+	private final int maxDistinctQueries;
+
+	private final AtomicReference<Window> current = new AtomicReference<>(new Window());
+
+	private final ScheduledExecutorService executor;
+
+	public AggregatingSlowQueryLogger(Duration window, int topK) {
+		this(window, topK, 1000);
+	}
+
+	/**
+	 * @param window             aggregation window
+	 * @param topK               number of queries to log per window
+	 * @param maxDistinctQueries max number of distinct queries to aggregate per window
+	 */
+	public AggregatingSlowQueryLogger(Duration window, int topK, int maxDistinctQueries) {
+		if (window.toMillis() < 1) {
+			throw new IllegalArgumentException("window must be 1ms or longer: " + window);
+		}
+		this.window = window;
+		this.topK = topK;
+		this.maxDistinctQueries = maxDistinctQueries;
+
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "r2dbc-slow-query-summary");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long windowMillis = window.toMillis();
+		// an exception thrown from the task cancels the subsequent executions
+		this.executor.scheduleAtFixedRate(() -> {
+			try {
+				flush();
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to log slow query summary", e);
+			}
+		}, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void log(QueryExecutionInfo queryExecutionInfo) {
+		String query = getQuery(queryExecutionInfo);
+		long durationNanos = queryExecutionInfo.getExecuteDuration().toNanos();
+
+		while (true) {
+			Window window = this.current.get();
+			window.writers.incrementAndGet();
+			try {
+				if (window.closed) {
+					// swapped out by "flush()". retry with the new window
+					continue;
+				}
+				ConcurrentMap<String, QueryStats> stats = window.stats;
+				QueryStats queryStats = stats.get(query);
+				if (queryStats == null) {
+					String key = stats.size() < this.maxDistinctQueries ? query : OTHER_QUERIES;
+					queryStats = stats.computeIfAbsent(key, k -> new QueryStats());
+				}
+				queryStats.record(durationNanos);
+				return;
+			}
+			finally {
+				window.writers.decrementAndGet();
+			}
+		}
+	}
+
+	private String getQuery(QueryExecutionInfo queryExecutionInfo) {
+		List<QueryInfo> queries = queryExecutionInfo.getQueries();
+		if (queries.size() == 1) {
+			return queries.get(0).getQuery();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (QueryInfo queryInfo : queries) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(queryInfo.getQuery());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Log the summary of the current window and start a new window.
+	 *
+	 * @return logged summary. {@code null} when there was no slow query.
+	 */
+	String flush() {
+		Window window = this.current.getAndSet(new Window());
+		window.closed = true;
+		while (window.writers.get() > 0) {
+			Thread.yield();
+		}
+
+		long totalCount = 0;
+		List<Map.Entry<String, QueryStats>> entries = new ArrayList<>();
+		for (Map.Entry<String, QueryStats> entry : window.stats.entrySet()) {
+			long count = entry.getValue().count.sum();
+			if (count > 0) {
+				entries.add(entry);
+				totalCount += count;
+			}
+		}
+		if (entries.isEmpty()) {
+			return null;
+		}
+		entries.sort(Comparator.comparingLong((Map.Entry<String, QueryStats> entry) -> entry.getValue().totalNanos.sum()).reversed());
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("SlowQuery summary: window=").append(this.window.toMillis()).append("ms");
+		sb.append(" count=").append(totalCount);
+		sb.append(" distinctQueries=").append(entries.size());
+		int size = Math.min(this.topK, entries.size());
+		for (int i = 0; i < size; i++) {
+			String query = entries.get(i).getKey();
+			QueryStats queryStats = entries.get(i).getValue();
+			long count = queryStats.count.sum();
+			long totalNanos = queryStats.totalNanos.sum();
+			sb.append("\n  #").append(i + 1);
+			sb.append(" count=").append(count);
+			sb.append(" total=").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append("ms");
+			sb.append(" max=").append(TimeUnit.NANOSECONDS.toMillis(queryStats.maxNanos.get())).append("ms");
+			sb.append(" mean=").append(TimeUnit.NANOSECONDS.toMillis(totalNanos / count)).append("ms");
+			sb.append(" query=\"").append(query).append("\"");
+		}
+
+		String summary = sb.toString();
+		logger.info(summary);
+		return summary;
+	}
+
+	/**
+	 * Stop aggregating and log the summary of the current window.
+	 */
+	@Override
+	public void close() {
+		this.executor.shutdown();
+		flush();
+	}
+
+	/**
+	 * Aggregation window. {@code writers} counts the threads recording to this window.
+	 */
+	private static class Window {
+
+		private final ConcurrentMap<String, QueryStats> stats = new ConcurrentHashMap<>();
+
+		private final AtomicInteger writers = new AtomicInteger();
+
+		private volatile boolean closed;
+	}
+
+	/**
+	 * Aggregated durations of a query.
+	 */
+	private static class QueryStats {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+		void record(long durationNanos) {
+			this.count.increment();
+			this.totalNanos.add(durationNanos);
+			this.maxNanos.accumulate(durationNanos);
+		}
+	}
+
+}
@@ -112,20 +112,39 @@ public class Application {
 		MetricsExecutionListener metricsListener = new MetricsExecutionListener(meterRegistry, Duration.ofMillis(500));
 		QueryTimeMetricsExecutionListener queryTimeListener = new QueryTimeMetricsExecutionListener(meterRegistry);
 
+		// publish buckets for connection acquisition time, to see the tail latency of pool exhaustion
+		TimerDistribution connectionTimerDistribution = new TimerDistribution();
+		connectionTimerDistribution.setPercentileHistogram(true);
+		connectionTimerDistribution.setServiceLevelObjectives(Duration.ofMillis(10), Duration.ofMillis(100), Duration.ofSeconds(1));
+		metricsListener.setConnectionTimerDistribution(connectionTimerDistribution);
+
+		// cache query type detection for repeatedly executed queries
+		CachingQueryTypeDetector queryTypeDetector = new CachingQueryTypeDetector();
+		queryTypeDetector.bindTo(meterRegistry);
+		queryTimeListener.setQueryTypeDetector(queryTypeDetector);
+
+		QueryFingerprintMetricsExecutionListener fingerprintListener = new QueryFingerprintMetricsExecutionListener(meterRegistry);
+
 		QueryExecutionInfoFormatter queryFormatter = QueryExecutionInfoFormatter.showAll();
 
 		// Example to use different proxy creation mechanism.
 		ProxyConfig proxyConfig = new ProxyConfig();
 		proxyConfig.setProxyFactoryFactory(SpringAopProxyFactory::new);
 
+		// dispatch callbacks only to the listeners that implement them
+		CompositeExecutionListener compositeListener = CompositeExecutionListener.builder()
+				.listener(tracingListener)
+				.listener(metricsListener)
+				.listener(queryTimeListener)
+				.listener(fingerprintListener)
+				.onAfterQuery(queryInfo -> {
+					System.out.println(queryFormatter.format(queryInfo));
+				})
+				.build();
+
 		ConnectionFactory proxyConnectionFactory =
 				ProxyConnectionFactory.builder(connectionFactory, proxyConfig)
-						.listener(tracingListener)
-						.listener(metricsListener)
-						.listener(queryTimeListener)
-						.onAfterQuery(queryInfo -> {
-							System.out.println(queryFormatter.format(queryInfo));
-						})
+						.listener(compositeListener)
 						.build();
 
 		return proxyConnectionFactory;
@@ -0,0 +1,215 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.examples.MetricsExecutionListener.SlowQueryLogger;
+import io.r2dbc.proxy.core.ConnectionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link SlowQueryLogger} that logs slow queries on a dedicated background thread.
+ * <p>
+ * The thread that completed the query only captures minimal data of the slow query and
+ * puts it on a bounded lock-free queue. Formatting and logging happen on the background
+ * thread. Therefore, logging I/O does not block event loop threads.
+ * <p>
+ * Slow queries are rate limited by a token bucket. Entries rejected by the rate limit or
+ * by a full queue are dropped and counted by {@code r2dbc.query.slow.dropped} counter.
+ * <p>
+ * {@link #close()} stops the background thread after logging pending entries.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class AsyncSlowQueryLogger implements SlowQueryLogger, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncSlowQueryLogger.class);
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final Queue<SlowQuery> queue = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger queueSize = new AtomicInteger();
+
+	private final int capacity;
+
+	// token bucket as "generic cell rate algorithm". keeps the time when the bucket becomes full
+	private final AtomicLong theoreticalArrivalTime;
+
+	private final long permitIntervalNanos;
+
+	private final long burstNanos;
+
+	private final Counter rateLimitedCounter;
+
+	private final Counter queueFullCounter;
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	/**
+	 * Create a logger with queue capacity of 1000 and rate limit of 10 entries per second
+	 * with burst of 100 entries.
+	 *
+	 * @param registry registry for dropped entries counter
+	 */
+	public AsyncSlowQueryLogger(MeterRegistry registry) {
+		this(registry, "r2dbc.", 1000, 10, 100);
+	}
+
+	/**
+	 * @param registry          registry for dropped entries counter
+	 * @param metricNamePrefix  metric name prefix for dropped entries counter
+	 * @param capacity          max number of entries waiting to be logged
+	 * @param permitsPerSecond  number of entries to log per second on average
+	 * @param burst             number of entries that can be logged at once
+	 */
+	public AsyncSlowQueryLogger(MeterRegistry registry, String metricNamePrefix, int capacity, double permitsPerSecond, int burst) {
+		if (capacity < 1 || permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("capacity, permitsPerSecond and burst must be positive");
+		}
+		this.capacity = capacity;
+		this.permitIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		this.burstNanos = this.permitIntervalNanos * burst;
+		this.theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+
+		this.rateLimitedCounter = Counter
+				.builder(metricNamePrefix + "query.slow.dropped")
+				.description("Slow query log entries dropped")
+				.tags("reason", "rate-limited")
+				.register(registry);
+		this.queueFullCounter = Counter
+				.builder(metricNamePrefix + "query.slow.dropped")
+				.description("Slow query log entries dropped")
+				.tags("reason", "queue-full")
+				.register(registry);
+
+		this.thread = new Thread(this::drain, "r2dbc-slow-query-logger");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	@Override
+	public void log(QueryExecutionInfo queryExecutionInfo) {
+		if (!tryAcquire()) {
+			this.rateLimitedCounter.increment();
+			return;
+		}
+		if (this.queueSize.incrementAndGet() > this.capacity) {
+			this.queueSize.decrementAndGet();
+			this.queueFullCounter.increment();
+			return;
+		}
+
+		ConnectionInfo connectionInfo = queryExecutionInfo.getConnectionInfo();
+		SlowQuery slowQuery = new SlowQuery(
+				connectionInfo != null ? connectionInfo.getConnectionId() : null,
+				queryExecutionInfo.getThreadName(),
+				queryExecutionInfo.getExecuteDuration(),
+				queryExecutionInfo.isSuccess(),
+				queryExecutionInfo.getQueries());
+		this.queue.offer(slowQuery);
+		LockSupport.unpark(this.thread);
+	}
+
+	private boolean tryAcquire() {
+		while (true) {
+			long now = System.nanoTime();
+			long current = this.theoreticalArrivalTime.get();
+			long next = Math.max(current, now) + this.permitIntervalNanos;
+			if (next - now > this.burstNanos) {
+				return false;
+			}
+			if (this.theoreticalArrivalTime.compareAndSet(current, next)) {
+				return true;
+			}
+		}
+	}
+
+	private void drain() {
+		while (this.running || !this.queue.isEmpty()) {
+			SlowQuery slowQuery = this.queue.poll();
+			if (slowQuery == null) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			this.queueSize.decrementAndGet();
+			try {
+				logger.info(slowQuery.format());
+			}
+			catch (RuntimeException e) {
+				// keep the thread alive for the next entries
+				logger.warn("Failed to log slow query", e);
+			}
+		}
+	}
+
+	/**
+	 * @return number of entries waiting to be logged
+	 */
+	public int getQueueSize() {
+		return this.queueSize.get();
+	}
+
+	@Override
+	public void close() throws InterruptedException {
+		this.running = false;
+		LockSupport.unpark(this.thread);
+		this.thread.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	/**
+	 * Data captured for a slow query.
+	 */
+	private static class SlowQuery {
+
+		private final String connectionId;
+
+		private final String threadName;
+
+		private final Duration executeDuration;
+
+		private final boolean success;
+
+		private final List<QueryInfo> queries;
+
+		SlowQuery(String connectionId, String threadName, Duration executeDuration, boolean success, List<QueryInfo> queries) {
+			this.connectionId = connectionId;
+			this.threadName = threadName;
+			this.executeDuration = executeDuration;
+			this.success = success;
+			this.queries = queries;
+		}
+
+		String format() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("SlowQuery: ");
+			sb.append("Time:").append(this.executeDuration.toMillis());
+			sb.append(" Connection:").append(this.connectionId);
+			sb.append(" Thread:").append(this.threadName);
+			sb.append(" Success:").append(this.success ? "True" : "False");
+			sb.append(" Query:[");
+			for (int i = 0; i < this.queries.size(); i++) {
+				if (i > 0) {
+					sb.append(",");
+				}
+				sb.append("\"").append(this.queries.get(i).getQuery()).append("\"");
+			}
+			sb.append("]");
+			return sb.toString();
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryType;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryTypeDetector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link QueryTypeDetector} that caches detected {@link QueryType} by query string.
+ * <p>
+ * Applications usually execute a small set of distinct queries repeatedly. This detector
+ * delegates the detection only for queries not seen recently.
+ * <p>
+ * The cache keeps two generations of entries. Lookups are lock-free reads on them. When
+ * the current generation becomes full, it becomes the old generation and the previous old
+ * one is discarded. Entries found in the old generation are promoted to the current one.
+ * This approximates LRU eviction while keeping at most {@code maxSize} entries.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CachingQueryTypeDetector implements QueryTypeDetector, MeterBinder {
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private final QueryTypeDetector delegate;
+
+	private final int generationSize;
+
+	private volatile Map<String, QueryType> current = new ConcurrentHashMap<>();
+
+	private volatile Map<String, QueryType> old = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private String metricNamePrefix = "r2dbc.";
+
+	public CachingQueryTypeDetector() {
+		this(new ScanningQueryTypeDetector());
+	}
+
+	public CachingQueryTypeDetector(QueryTypeDetector delegate) {
+		this(delegate, DEFAULT_MAX_SIZE);
+	}
+
+	public CachingQueryTypeDetector(QueryTypeDetector delegate, int maxSize) {
+		if (maxSize < 2) {
+			throw new IllegalArgumentException("maxSize must be greater than 1");
+		}
+		this.delegate = delegate;
+		this.generationSize = maxSize / 2;
+	}
+
+	@Override
+	public QueryType detect(String query) {
+		if (query == null) {
+			return this.delegate.detect(null);
+		}
+
+		Map<String, QueryType> current = this.current;
+		QueryType type = current.get(query);
+		if (type != null) {
+			this.hits.increment();
+			return type;
+		}
+
+		type = this.old.get(query);
+		if (type != null) {
+			this.hits.increment();
+		}
+		else {
+			this.misses.increment();
+			type = this.delegate.detect(query);
+		}
+
+		current.put(query, type);
+		if (current.size() >= this.generationSize) {
+			rotate(current);
+		}
+		return type;
+	}
+
+	private synchronized void rotate(Map<String, QueryType> full) {
+		// another thread may have already rotated
+		if (this.current == full) {
+			this.old = full;
+			this.current = new ConcurrentHashMap<>();
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder(this.metricNamePrefix + "query.type.cache.gets", this.hits, LongAdder::doubleValue)
+				.description("Num of query type lookups that found a cached entry")
+				.tags("result", "hit")
+				.register(registry);
+		FunctionCounter.builder(this.metricNamePrefix + "query.type.cache.gets", this.misses, LongAdder::doubleValue)
+				.description("Num of query type lookups that required detection")
+				.tags("result", "miss")
+				.register(registry);
+		Gauge.builder(this.metricNamePrefix + "query.type.cache.size", this, CachingQueryTypeDetector::size)
+				.description("Num of cached query types")
+				.register(registry);
+	}
+
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	public int size() {
+		return this.current.size() + this.old.size();
+	}
+
+	public void setMetricNamePrefix(String metricNamePrefix) {
+		this.metricNamePrefix = metricNamePrefix;
+	}
+
+}
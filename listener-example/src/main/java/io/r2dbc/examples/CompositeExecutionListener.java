@@ -0,0 +1,249 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.proxy.core.ExecutionType;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link ProxyExecutionListener} that dispatches callbacks only to the listeners that
+ * implement them.
+ * <p>
+ * Registering listeners to r2dbc-proxy individually calls every callback of every listener,
+ * even when most of them are empty default methods. This listener introspects which
+ * callbacks each listener overrides, and builds an array of the implemented callbacks per
+ * hook. Therefore, a hook that no listener implements costs only an empty loop.
+ * <p>
+ * Callbacks for each R2DBC method, such as {@link ProxyMethodExecutionListener#beforeCreateOnConnectionFactory},
+ * are resolved when the method is invoked for the first time. Callbacks are called in the
+ * same order as registering the listeners to r2dbc-proxy.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class CompositeExecutionListener implements ProxyExecutionListener {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+	private static final MethodType CALLBACK_TYPE = MethodType.methodType(void.class, Object.class);
+
+	private final List<Object> listeners;
+
+	private final ConcurrentMap<Method, MethodCallbacks> methodCallbacks = new ConcurrentHashMap<>();
+
+	// indexed by ExecutionType ordinal
+	private final Consumer<QueryExecutionInfo>[][] beforeQueryCallbacks;
+
+	private final Consumer<QueryExecutionInfo>[][] afterQueryCallbacks;
+
+	private final Consumer<QueryExecutionInfo>[] eachQueryResultCallbacks;
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@SuppressWarnings("unchecked")
+	private CompositeExecutionListener(List<Object> listeners) {
+		this.listeners = listeners;
+
+		ExecutionType[] types = ExecutionType.values();
+		this.beforeQueryCallbacks = new Consumer[types.length][];
+		this.afterQueryCallbacks = new Consumer[types.length][];
+		for (ExecutionType type : types) {
+			String hookSuffix = type == ExecutionType.BATCH ? "ExecuteOnBatch" : "ExecuteOnStatement";
+			this.beforeQueryCallbacks[type.ordinal()] = resolveQueryCallbacks("beforeQuery", "before" + hookSuffix, true);
+			this.afterQueryCallbacks[type.ordinal()] = resolveQueryCallbacks("afterQuery", "after" + hookSuffix, false);
+		}
+		this.eachQueryResultCallbacks = resolveQueryCallbacks("eachQueryResult", null, true);
+	}
+
+	@Override
+	public void beforeMethod(MethodExecutionInfo executionInfo) {
+		for (Consumer<MethodExecutionInfo> callback : getMethodCallbacks(executionInfo.getMethod()).before) {
+			callback.accept(executionInfo);
+		}
+	}
+
+	@Override
+	public void afterMethod(MethodExecutionInfo executionInfo) {
+		for (Consumer<MethodExecutionInfo> callback : getMethodCallbacks(executionInfo.getMethod()).after) {
+			callback.accept(executionInfo);
+		}
+	}
+
+	@Override
+	public void beforeQuery(QueryExecutionInfo execInfo) {
+		for (Consumer<QueryExecutionInfo> callback : this.beforeQueryCallbacks[execInfo.getType().ordinal()]) {
+			callback.accept(execInfo);
+		}
+	}
+
+	@Override
+	public void afterQuery(QueryExecutionInfo execInfo) {
+		for (Consumer<QueryExecutionInfo> callback : this.afterQueryCallbacks[execInfo.getType().ordinal()]) {
+			callback.accept(execInfo);
+		}
+	}
+
+	@Override
+	public void eachQueryResult(QueryExecutionInfo execInfo) {
+		for (Consumer<QueryExecutionInfo> callback : this.eachQueryResultCallbacks) {
+			callback.accept(execInfo);
+		}
+	}
+
+	private MethodCallbacks getMethodCallbacks(Method method) {
+		MethodCallbacks callbacks = this.methodCallbacks.get(method);
+		if (callbacks == null) {
+			callbacks = new MethodCallbacks(resolveMethodCallbacks(method, true), resolveMethodCallbacks(method, false));
+			this.methodCallbacks.putIfAbsent(method, callbacks);
+		}
+		return callbacks;
+	}
+
+	/**
+	 * Resolve callbacks for an invoked R2DBC method.
+	 * For {@link ProxyMethodExecutionListener}, the method specific callback is named as
+	 * {@code [before|after]<Method>On<Interface>}, e.g. {@code beforeCreateOnConnectionFactory}.
+	 */
+	private Consumer<MethodExecutionInfo>[] resolveMethodCallbacks(Method method, boolean before) {
+		String methodName = method.getName();
+		String hook = (before ? "before" : "after") + Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1)
+				+ "On" + method.getDeclaringClass().getSimpleName();
+		return resolveCallbacks(before ? "beforeMethod" : "afterMethod", hook, before, MethodExecutionInfo.class);
+	}
+
+	private Consumer<QueryExecutionInfo>[] resolveQueryCallbacks(String genericHook, String specificHook, boolean before) {
+		return resolveCallbacks(genericHook, specificHook, before, QueryExecutionInfo.class);
+	}
+
+	/**
+	 * Collect callbacks in the order of listeners. For each {@link ProxyMethodExecutionListener},
+	 * the specific hook is called after the generic hook for "before" callbacks, and before the
+	 * generic hook for "after" callbacks.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Consumer<T>[] resolveCallbacks(String genericHook, String specificHook, boolean before, Class<T> infoType) {
+		List<Consumer<T>> callbacks = new ArrayList<>();
+		for (Object listener : this.listeners) {
+			if (listener instanceof Consumer) {
+				// "onAfterQuery" callback
+				if ("afterQuery".equals(genericHook)) {
+					callbacks.add((Consumer<T>) listener);
+				}
+				continue;
+			}
+
+			// "ProxyMethodExecutionListener" extends "ProxyExecutionListener"
+			Class<?> listenerType = listener instanceof ProxyMethodExecutionListener ? ProxyMethodExecutionListener.class : ProxyExecutionListener.class;
+			Consumer<T> generic = findCallback(listener, listenerType, genericHook, infoType);
+			Consumer<T> specific = null;
+			if (specificHook != null && listenerType == ProxyMethodExecutionListener.class) {
+				specific = findCallback(listener, listenerType, specificHook, infoType);
+			}
+
+			if (before) {
+				addIfPresent(callbacks, generic);
+				addIfPresent(callbacks, specific);
+			}
+			else {
+				addIfPresent(callbacks, specific);
+				addIfPresent(callbacks, generic);
+			}
+		}
+		return callbacks.toArray(new Consumer[0]);
+	}
+
+	private static <T> void addIfPresent(List<Consumer<T>> callbacks, Consumer<T> callback) {
+		if (callback != null) {
+			callbacks.add(callback);
+		}
+	}
+
+	/**
+	 * @return callback bound to the listener. {@code null} when the hook does not exist or the
+	 * listener does not override the default method.
+	 */
+	private static <T> Consumer<T> findCallback(Object listener, Class<?> listenerType, String hook, Class<T> infoType) {
+		MethodHandle handle;
+		try {
+			if (listener.getClass().getMethod(hook, infoType).isDefault()) {
+				return null;
+			}
+			handle = LOOKUP.findVirtual(listenerType, hook, MethodType.methodType(void.class, infoType))
+					.bindTo(listener)
+					.asType(CALLBACK_TYPE);
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalStateException("Failed to access " + hook + " on " + listenerType, e);
+		}
+		return info -> {
+			try {
+				handle.invokeExact((Object) info);
+			}
+			catch (RuntimeException | Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new UndeclaredThrowableException(e);
+			}
+		};
+	}
+
+	/**
+	 * Resolved callbacks for an R2DBC method.
+	 */
+	private static class MethodCallbacks {
+
+		private final Consumer<MethodExecutionInfo>[] before;
+
+		private final Consumer<MethodExecutionInfo>[] after;
+
+		MethodCallbacks(Consumer<MethodExecutionInfo>[] before, Consumer<MethodExecutionInfo>[] after) {
+			this.before = before;
+			this.after = after;
+		}
+	}
+
+	/**
+	 * Builder for {@link CompositeExecutionListener}.
+	 */
+	public static class Builder {
+
+		private final List<Object> listeners = new ArrayList<>();
+
+		public Builder listener(ProxyExecutionListener listener) {
+			this.listeners.add(listener);
+			return this;
+		}
+
+		public Builder listener(ProxyMethodExecutionListener listener) {
+			this.listeners.add(listener);
+			return this;
+		}
+
+		public Builder onAfterQuery(Consumer<QueryExecutionInfo> consumer) {
+			this.listeners.add(consumer);
+			return this;
+		}
+
+		public CompositeExecutionListener build() {
+			return new CompositeExecutionListener(new ArrayList<>(this.listeners));
+		}
+	}
+
+}
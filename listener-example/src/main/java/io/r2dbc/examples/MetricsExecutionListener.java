@@ -3,6 +3,7 @@ package io.r2dbc.examples;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.r2dbc.proxy.core.ExecutionType;
 import io.r2dbc.proxy.core.MethodExecutionInfo;
 import io.r2dbc.proxy.core.QueryExecutionInfo;
 import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
@@ -31,6 +32,16 @@ public class MetricsExecutionListener implements ProxyMethodExecutionListener {
 			.showConnection()
 			.showQuery();
 
+	private SlowQueryLogger slowQueryLogger = this::logSlowQuery;
+
+	private TimerDistribution connectionTimerDistribution = new TimerDistribution();
+
+	private TimerDistribution queryTimerDistribution = new TimerDistribution();
+
+	private Meters meters;  // null unless meters are cached
+
+	private Timer[] queryDurationTimers;  // null unless query duration is recorded
+
 	public MetricsExecutionListener(MeterRegistry registry) {
 		this.registry = registry;
 	}
@@ -50,22 +61,16 @@ public class MetricsExecutionListener implements ProxyMethodExecutionListener {
 	public void afterCreateOnConnectionFactory(MethodExecutionInfo methodExecutionInfo) {
 		Timer.Sample sample = methodExecutionInfo.getValueStore().get("connectionCreate", Timer.Sample.class);
 
-		Timer timer = Timer
-				.builder(this.metricNamePrefix + "connection")
-				.description("Time to create(acquire) a connection")
-				.tags("event", "create")
-				.register(this.registry);
+		Meters meters = this.meters;
+		Timer timer = meters != null ? meters.connection : Meters.connection(this.registry, this.metricNamePrefix, this.connectionTimerDistribution);
 
 		sample.stop(timer);
 	}
 
 	@Override
 	public void afterCommitTransactionOnConnection(MethodExecutionInfo methodExecutionInfo) {
-		Counter counter = Counter
-				.builder(this.metricNamePrefix + "transaction")
-				.description("Num of transactions")
-				.tags("event", "commit")
-				.register(registry);
+		Meters meters = this.meters;
+		Counter counter = meters != null ? meters.commit : Meters.commit(this.registry, this.metricNamePrefix);
 		counter.increment();
 	}
 
@@ -80,11 +85,8 @@ public class MetricsExecutionListener implements ProxyMethodExecutionListener {
 	}
 
 	private void incrementRollbackCounter() {
-		Counter counter = Counter
-				.builder(this.metricNamePrefix + "transaction")
-				.description("Num of transactions")
-				.tags("event", "rollback")
-				.register(registry);
+		Meters meters = this.meters;
+		Counter counter = meters != null ? meters.rollback : Meters.rollback(this.registry, this.metricNamePrefix);
 		counter.increment();
 	}
 
@@ -100,12 +102,15 @@ public class MetricsExecutionListener implements ProxyMethodExecutionListener {
 	}
 
 	private void afterExecuteQuery(QueryExecutionInfo queryExecutionInfo) {
-		Counter success = Counter
-				.builder(this.metricNamePrefix + "query")
-				.description("Num of executed queries")
-				.register(this.registry);
+		Meters meters = this.meters;
+		Counter success = meters != null ? meters.query : Meters.query(this.registry, this.metricNamePrefix);
 		success.increment();
 
+		Timer[] queryDurationTimers = this.queryDurationTimers;
+		if (queryDurationTimers != null) {
+			int index = queryDurationIndex(queryExecutionInfo.getType(), queryExecutionInfo.isSuccess());
+			queryDurationTimers[index].record(queryExecutionInfo.getExecuteDuration());
+		}
 
 		// when negative value is specified, do not log slow query
 		if (this.slowQueryThreshold.isNegative()) {
@@ -113,29 +118,236 @@ public class MetricsExecutionListener implements ProxyMethodExecutionListener {
 		}
 
 		if (this.slowQueryThreshold.minus(queryExecutionInfo.getExecuteDuration()).isNegative()) {
-			Counter slowQueryCounter = Counter
-					.builder(this.metricNamePrefix + "query.slow")
-					.description("Slow query count that took more than threshold")
-					.register(registry);
+			Counter slowQueryCounter = meters != null ? meters.slowQuery : Meters.slowQuery(this.registry, this.metricNamePrefix);
 			slowQueryCounter.increment();
 
-
-			StringBuilder sb = new StringBuilder();
-			sb.append("SlowQuery: ");
-			sb.append(this.queryFormatter.format(queryExecutionInfo));
-			logger.info(sb.toString());
+			this.slowQueryLogger.log(queryExecutionInfo);
 		}
 	}
 
+	private void logSlowQuery(QueryExecutionInfo queryExecutionInfo) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("SlowQuery: ");
+		sb.append(this.queryFormatter.format(queryExecutionInfo));
+		logger.info(sb.toString());
+	}
+
+	/**
+	 * Set the registry. Cached meters and query duration timers are removed from the previous
+	 * registry and registered to the new one.
+	 */
 	public void setRegistry(MeterRegistry registry) {
+		removeMeters();
 		this.registry = registry;
+		refreshMeters();
 	}
 
+	/**
+	 * Set the metric name prefix. Cached meters and query duration timers with the previous
+	 * prefix are removed from the registry and registered again with the new one.
+	 */
 	public void setMetricNamePrefix(String metricNamePrefix) {
+		removeMeters();
 		this.metricNamePrefix = metricNamePrefix;
+		refreshMeters();
 	}
 
 	public void setSlowQueryThreshold(Duration slowQueryThreshold) {
 		this.slowQueryThreshold = slowQueryThreshold;
 	}
+
+	/**
+	 * Set distribution statistics, such as percentile histogram and SLO buckets, for the
+	 * connection acquisition timer. Already registered connection timer is removed from the
+	 * registry and registered again with the configuration.
+	 *
+	 * @param connectionTimerDistribution distribution statistics configuration
+	 */
+	public void setConnectionTimerDistribution(TimerDistribution connectionTimerDistribution) {
+		this.connectionTimerDistribution = connectionTimerDistribution;
+		Timer timer = this.registry.find(this.metricNamePrefix + "connection").tags("event", "create").timer();
+		if (timer != null) {
+			this.registry.remove(timer);
+		}
+		refreshMeters();
+	}
+
+	/**
+	 * Set distribution statistics, such as percentile histogram and SLO buckets, for the
+	 * {@code r2dbc.query.duration} timers. Already registered query duration timers are
+	 * removed from the registry and registered again with the configuration.
+	 *
+	 * @param queryTimerDistribution distribution statistics configuration
+	 * @see #setRecordQueryDuration(boolean)
+	 */
+	public void setQueryTimerDistribution(TimerDistribution queryTimerDistribution) {
+		this.queryTimerDistribution = queryTimerDistribution;
+		if (this.queryDurationTimers != null) {
+			removeQueryDurationTimers();
+			this.queryDurationTimers = createQueryDurationTimers();
+		}
+	}
+
+	/**
+	 * Set the logger for slow queries. By default, slow queries are formatted and logged
+	 * synchronously on the thread that completed the query.
+	 *
+	 * @param slowQueryLogger slow query logger
+	 * @see AsyncSlowQueryLogger
+	 */
+	public void setSlowQueryLogger(SlowQueryLogger slowQueryLogger) {
+		this.slowQueryLogger = slowQueryLogger;
+	}
+
+	/**
+	 * When enabled, all meters are registered once and kept by this listener, so that
+	 * recording a metric does not build and look up the meter on every event.
+	 * <p>
+	 * Meters are re-resolved when registry or metric name prefix is changed, and the previous
+	 * ones are removed from the registry.
+	 *
+	 * @param cacheMeters {@code true} to register meters upfront and reuse them
+	 */
+	public void setCacheMeters(boolean cacheMeters) {
+		this.meters = cacheMeters ? new Meters(this.registry, this.metricNamePrefix, this.connectionTimerDistribution) : null;
+	}
+
+	/**
+	 * When enabled, query execution time is recorded to {@code r2dbc.query.duration} timers
+	 * tagged by execution type({@code statement}/{@code batch}) and outcome
+	 * ({@code success}/{@code failure}).
+	 * <p>
+	 * Timers for all combinations are registered upfront, so that recording does not look
+	 * up meters.
+	 *
+	 * @param recordQueryDuration {@code true} to record query execution time
+	 */
+	public void setRecordQueryDuration(boolean recordQueryDuration) {
+		this.queryDurationTimers = recordQueryDuration ? createQueryDurationTimers() : null;
+	}
+
+	private void refreshMeters() {
+		if (this.meters != null) {
+			this.meters = new Meters(this.registry, this.metricNamePrefix, this.connectionTimerDistribution);
+		}
+		if (this.queryDurationTimers != null) {
+			this.queryDurationTimers = createQueryDurationTimers();
+		}
+	}
+
+	/**
+	 * Remove cached meters and query duration timers from the current registry.
+	 */
+	private void removeMeters() {
+		Meters meters = this.meters;
+		if (meters != null) {
+			meters.remove(this.registry);
+		}
+		removeQueryDurationTimers();
+	}
+
+	private void removeQueryDurationTimers() {
+		Timer[] queryDurationTimers = this.queryDurationTimers;
+		if (queryDurationTimers != null) {
+			for (Timer timer : queryDurationTimers) {
+				this.registry.remove(timer);
+			}
+		}
+	}
+
+	private Timer[] createQueryDurationTimers() {
+		ExecutionType[] types = ExecutionType.values();
+		Timer[] timers = new Timer[types.length * 2];
+		for (ExecutionType type : types) {
+			for (boolean success : new boolean[]{true, false}) {
+				Timer.Builder builder = Timer
+						.builder(this.metricNamePrefix + "query.duration")
+						.description("Time to execute queries")
+						.tags("type", type.name().toLowerCase(), "outcome", success ? "success" : "failure");
+				timers[queryDurationIndex(type, success)] = this.queryTimerDistribution.apply(builder).register(this.registry);
+			}
+		}
+		return timers;
+	}
+
+	private static int queryDurationIndex(ExecutionType type, boolean success) {
+		return type.ordinal() * 2 + (success ? 0 : 1);
+	}
+
+	/**
+	 * Callback to log a query that took more than the slow query threshold.
+	 */
+	public interface SlowQueryLogger {
+		void log(QueryExecutionInfo queryExecutionInfo);
+	}
+
+	/**
+	 * Meters resolved for a registry and metric name prefix.
+	 */
+	private static class Meters {
+
+		private final Timer connection;
+
+		private final Counter commit;
+
+		private final Counter rollback;
+
+		private final Counter query;
+
+		private final Counter slowQuery;
+
+		Meters(MeterRegistry registry, String metricNamePrefix, TimerDistribution connectionTimerDistribution) {
+			this.connection = connection(registry, metricNamePrefix, connectionTimerDistribution);
+			this.commit = commit(registry, metricNamePrefix);
+			this.rollback = rollback(registry, metricNamePrefix);
+			this.query = query(registry, metricNamePrefix);
+			this.slowQuery = slowQuery(registry, metricNamePrefix);
+		}
+
+		void remove(MeterRegistry registry) {
+			registry.remove(this.connection);
+			registry.remove(this.commit);
+			registry.remove(this.rollback);
+			registry.remove(this.query);
+			registry.remove(this.slowQuery);
+		}
+
+		static Timer connection(MeterRegistry registry, String metricNamePrefix, TimerDistribution distribution) {
+			Timer.Builder builder = Timer
+					.builder(metricNamePrefix + "connection")
+					.description("Time to create(acquire) a connection")
+					.tags("event", "create");
+			return distribution.apply(builder).register(registry);
+		}
+
+		static Counter commit(MeterRegistry registry, String metricNamePrefix) {
+			return Counter
+					.builder(metricNamePrefix + "transaction")
+					.description("Num of transactions")
+					.tags("event", "commit")
+					.register(registry);
+		}
+
+		static Counter rollback(MeterRegistry registry, String metricNamePrefix) {
+			return Counter
+					.builder(metricNamePrefix + "transaction")
+					.description("Num of transactions")
+					.tags("event", "rollback")
+					.register(registry);
+		}
+
+		static Counter query(MeterRegistry registry, String metricNamePrefix) {
+			return Counter
+					.builder(metricNamePrefix + "query")
+					.description("Num of executed queries")
+					.register(registry);
+		}
+
+		static Counter slowQuery(MeterRegistry registry, String metricNamePrefix) {
+			return Counter
+					.builder(metricNamePrefix + "query.slow")
+					.description("Slow query count that took more than threshold")
+					.register(registry);
+		}
+	}
 }
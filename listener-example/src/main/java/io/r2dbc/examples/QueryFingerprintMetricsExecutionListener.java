@@ -0,0 +1,436 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener to populate micrometer latency metrics per query fingerprint.
+ * <p>
+ * A fingerprint is the query with literals and bind markers replaced by {@code ?} and
+ * whitespace normalized. Each fingerprint gets a timer with percentile histogram, so that
+ * the latency distribution of each statement is visible without recording the actual query.
+ * <p>
+ * To bound the number of meters, only the top {@code maxFingerprints} fingerprints by
+ * execution count get their own timers. Other queries are recorded to the timer tagged with
+ * {@value #OTHER_FINGERPRINT}.
+ * <p>
+ * Executions are counted per fingerprint. Every {@code rotationInterval}, the top
+ * fingerprints that are executed at least {@code minCount} times are selected, timers of
+ * fingerprints that dropped out of the top are removed from the registry, and the counts are
+ * halved so that recent executions weigh more. Therefore, a query that becomes hot later
+ * gets its own timer at the next rotation. Between rotations, a fingerprint reaching
+ * {@code minCount} gets a timer immediately when there is a free slot.
+ * <p>
+ * Up to {@code maxCandidates} fingerprints are counted. When it is full, executions of a new
+ * fingerprint are not counted, and the rotation is brought forward to drop the least
+ * executed fingerprints.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryFingerprintMetricsExecutionListener implements ProxyExecutionListener {
+
+	public static final String OTHER_FINGERPRINT = "other";
+
+	// "~" and 8 hex digits of the fingerprint hash appended to a truncated tag value
+	private static final int HASH_SUFFIX_LENGTH = 9;
+
+	private MeterRegistry registry;
+
+	private String metricNamePrefix = "r2dbc.";
+
+	private QueryFingerprinter queryFingerprinter = new DefaultQueryFingerprinter();
+
+	private int maxFingerprints = 100;
+
+	private int minCount = 10;
+
+	private int maxCandidates = 10_000;
+
+	private int maxTagLength = 200;
+
+	private long rotationIntervalNanos = TimeUnit.MINUTES.toNanos(1);
+
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+	// execution counts of fingerprints in the current rotation, including the ones with own timer
+	private final ConcurrentMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+	private final AtomicLong nextRotationNanos = new AtomicLong(System.nanoTime() + this.rotationIntervalNanos);
+
+	private volatile Timer otherTimer;
+
+	public QueryFingerprintMetricsExecutionListener(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void afterQuery(QueryExecutionInfo queryExecutionInfo) {
+		Duration duration = queryExecutionInfo.getExecuteDuration();
+		for (QueryInfo queryInfo : queryExecutionInfo.getQueries()) {
+			String fingerprint = this.queryFingerprinter.fingerprint(queryInfo.getQuery());
+			getTimer(fingerprint).record(duration);
+		}
+
+		long next = this.nextRotationNanos.get();
+		if (System.nanoTime() - next >= 0 && this.nextRotationNanos.compareAndSet(next, System.nanoTime() + this.rotationIntervalNanos)) {
+			rotate();
+		}
+	}
+
+	private Timer getTimer(String fingerprint) {
+		long count = count(fingerprint);
+		Timer timer = this.timers.get(fingerprint);
+		if (timer != null) {
+			return timer;
+		}
+		if (count >= this.minCount && this.timers.size() < this.maxFingerprints) {
+			synchronized (this.timers) {
+				timer = this.timers.get(fingerprint);
+				if (timer == null && this.timers.size() < this.maxFingerprints) {
+					timer = createTimer(fingerprint);
+					this.timers.put(fingerprint, timer);
+				}
+			}
+			if (timer != null) {
+				return timer;
+			}
+		}
+		return getOtherTimer();
+	}
+
+	/**
+	 * @return execution count in the current rotation. {@code 0} when the fingerprint is not counted.
+	 */
+	private long count(String fingerprint) {
+		LongAdder count = this.counts.get(fingerprint);
+		if (count == null) {
+			if (this.counts.size() >= this.maxCandidates) {
+				// too many distinct queries, rotate to drop the least executed ones
+				this.nextRotationNanos.set(System.nanoTime());
+				return 0;
+			}
+			count = this.counts.computeIfAbsent(fingerprint, key -> new LongAdder());
+		}
+		count.increment();
+		return count.sum();
+	}
+
+	/**
+	 * Select the top fingerprints by execution count, replace timers accordingly, and decay
+	 * the counts.
+	 */
+	void rotate() {
+		synchronized (this.timers) {
+			List<Map.Entry<String, Long>> entries = new ArrayList<>(this.counts.size());
+			for (Map.Entry<String, LongAdder> entry : this.counts.entrySet()) {
+				entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+			}
+			entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+
+			Set<String> top = new HashSet<>();
+			for (Map.Entry<String, Long> entry : entries) {
+				if (top.size() >= this.maxFingerprints || entry.getValue() < this.minCount) {
+					break;
+				}
+				top.add(entry.getKey());
+			}
+
+			Iterator<Map.Entry<String, Timer>> iterator = this.timers.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry<String, Timer> entry = iterator.next();
+				if (!top.contains(entry.getKey())) {
+					this.registry.remove(entry.getValue());
+					iterator.remove();
+				}
+			}
+			for (String fingerprint : top) {
+				this.timers.computeIfAbsent(fingerprint, this::createTimer);
+			}
+
+			// halve the counts, and keep the most executed half of "maxCandidates"
+			int keep = Math.max(this.maxCandidates / 2, 1);
+			for (int i = 0; i < entries.size(); i++) {
+				String fingerprint = entries.get(i).getKey();
+				long decayed = entries.get(i).getValue() / 2;
+				if (i >= keep || decayed == 0) {
+					this.counts.remove(fingerprint);
+				}
+				else {
+					LongAdder count = this.counts.get(fingerprint);
+					count.add(decayed - count.sum());
+				}
+			}
+		}
+	}
+
+	private Timer getOtherTimer() {
+		Timer timer = this.otherTimer;
+		if (timer == null) {
+			timer = createTimer(OTHER_FINGERPRINT);
+			this.otherTimer = timer;
+		}
+		return timer;
+	}
+
+	private Timer createTimer(String fingerprint) {
+		return Timer
+				.builder(this.metricNamePrefix + "query.fingerprint")
+				.description("Time to execute queries by fingerprint")
+				.tags("fingerprint", toTagValue(fingerprint))
+				.publishPercentileHistogram()
+				.register(this.registry);
+	}
+
+	/**
+	 * Truncate the fingerprint to {@code maxTagLength}. A truncated value ends with the hash of
+	 * the whole fingerprint, so that fingerprints sharing a prefix do not share a timer, and
+	 * removing one of them on rotation does not remove the other's timer.
+	 */
+	private String toTagValue(String fingerprint) {
+		if (fingerprint.length() <= this.maxTagLength) {
+			return fingerprint;
+		}
+		return fingerprint.substring(0, this.maxTagLength - HASH_SUFFIX_LENGTH) + String.format("~%08x", fingerprint.hashCode());
+	}
+
+	/**
+	 * Remove timers from the current registry and start counting over.
+	 */
+	private void resetTimers() {
+		synchronized (this.timers) {
+			for (Timer timer : this.timers.values()) {
+				this.registry.remove(timer);
+			}
+			if (this.otherTimer != null) {
+				this.registry.remove(this.otherTimer);
+			}
+			this.timers.clear();
+			this.counts.clear();
+			this.otherTimer = null;
+		}
+	}
+
+
+	public void setRegistry(MeterRegistry registry) {
+		resetTimers();
+		this.registry = registry;
+	}
+
+	public void setMetricNamePrefix(String metricNamePrefix) {
+		resetTimers();
+		this.metricNamePrefix = metricNamePrefix;
+	}
+
+	public void setQueryFingerprinter(QueryFingerprinter queryFingerprinter) {
+		this.queryFingerprinter = queryFingerprinter;
+	}
+
+	/**
+	 * @param maxFingerprints max number of fingerprints that have own timer
+	 */
+	public void setMaxFingerprints(int maxFingerprints) {
+		this.maxFingerprints = maxFingerprints;
+	}
+
+	/**
+	 * @param minCount number of executions in a rotation required for a fingerprint to get own timer
+	 */
+	public void setMinCount(int minCount) {
+		this.minCount = minCount;
+	}
+
+	/**
+	 * @param maxCandidates max number of fingerprints to count executions for
+	 */
+	public void setMaxCandidates(int maxCandidates) {
+		this.maxCandidates = maxCandidates;
+	}
+
+	/**
+	 * @param rotationInterval interval to reselect the top fingerprints and decay the execution counts
+	 */
+	public void setRotationInterval(Duration rotationInterval) {
+		this.rotationIntervalNanos = rotationInterval.toNanos();
+		this.nextRotationNanos.set(System.nanoTime() + this.rotationIntervalNanos);
+	}
+
+	/**
+	 * @param maxTagLength max length of fingerprint tag value, including the hash suffix of truncated values
+	 */
+	public void setMaxTagLength(int maxTagLength) {
+		if (maxTagLength <= HASH_SUFFIX_LENGTH) {
+			throw new IllegalArgumentException("maxTagLength must be greater than " + HASH_SUFFIX_LENGTH + ": " + maxTagLength);
+		}
+		this.maxTagLength = maxTagLength;
+	}
+
+	public interface QueryFingerprinter {
+		String fingerprint(String query);
+	}
+
+	/**
+	 * Default {@link QueryFingerprinter}.
+	 * <p>
+	 * Replaces string and numeric literals and bind markers({@code ?}, {@code $1},
+	 * {@code :name}, {@code @name}) with {@code ?}, and collapses consecutive {@code ?}
+	 * separated by comma, such as in-list, into one. Comments are removed, and whitespace
+	 * is normalized to a single space.
+	 */
+	public static class DefaultQueryFingerprinter implements QueryFingerprinter {
+
+		@Override
+		public String fingerprint(String query) {
+			if (query == null) {
+				return "";
+			}
+
+			int length = query.length();
+			StringBuilder sb = new StringBuilder(length);
+			int pos = 0;
+			while (pos < length) {
+				char c = query.charAt(pos);
+				char next = pos + 1 < length ? query.charAt(pos + 1) : 0;
+				if (Character.isWhitespace(c)) {
+					pos++;
+					appendSpace(sb);
+				}
+				else if (c == '-' && next == '-') {
+					while (pos < length && query.charAt(pos) != '\n') {
+						pos++;
+					}
+					appendSpace(sb);
+				}
+				else if (c == '/' && next == '*') {
+					pos = skipBlockComment(query, pos + 2, length);
+					appendSpace(sb);
+				}
+				else if (c == '\'') {
+					// doubled quote as an escape is handled as two consecutive literals
+					pos++;
+					while (pos < length && query.charAt(pos) != '\'') {
+						pos++;
+					}
+					pos++;
+					appendPlaceholder(sb);
+				}
+				else if (c == '"' || c == '`') {
+					// quoted identifier
+					int end = query.indexOf(c, pos + 1);
+					end = end < 0 ? length : end + 1;
+					sb.append(query, pos, end);
+					pos = end;
+				}
+				else if (c == '?' || isBindMarkerStart(query, pos, next) && !isIdentifierEnd(sb)) {
+					pos++;
+					while (pos < length && Character.isJavaIdentifierPart(query.charAt(pos))) {
+						pos++;
+					}
+					appendPlaceholder(sb);
+				}
+				else if (Character.isDigit(c) && !isIdentifierEnd(sb)) {
+					pos++;
+					while (pos < length && (Character.isLetterOrDigit(query.charAt(pos)) || query.charAt(pos) == '.')) {
+						pos++;
+					}
+					appendPlaceholder(sb);
+				}
+				else if (Character.isJavaIdentifierStart(c)) {
+					int start = pos;
+					pos++;
+					while (pos < length && Character.isJavaIdentifierPart(query.charAt(pos))) {
+						pos++;
+					}
+					sb.append(query, start, pos);
+				}
+				else {
+					sb.append(c);
+					pos++;
+				}
+			}
+
+			int last = sb.length() - 1;
+			if (last >= 0 && sb.charAt(last) == ' ') {
+				sb.setLength(last);
+			}
+			return sb.toString();
+		}
+
+		private static void appendSpace(StringBuilder sb) {
+			int length = sb.length();
+			if (length > 0 && sb.charAt(length - 1) != ' ') {
+				sb.append(' ');
+			}
+		}
+
+		private static void appendPlaceholder(StringBuilder sb) {
+			// collapse "?, ?" and "?,?" into "?". "??" comes from a literal with doubled quote
+			int length = sb.length();
+			if (length >= 1 && sb.charAt(length - 1) == '?') {
+				return;
+			}
+			if (length >= 3 && sb.charAt(length - 1) == ' ' && sb.charAt(length - 2) == ',' && sb.charAt(length - 3) == '?') {
+				sb.setLength(length - 2);
+				return;
+			}
+			if (length >= 2 && sb.charAt(length - 1) == ',' && sb.charAt(length - 2) == '?') {
+				sb.setLength(length - 1);
+				return;
+			}
+			sb.append('?');
+		}
+
+		private static boolean isBindMarkerStart(String query, int pos, char next) {
+			char c = query.charAt(pos);
+			if (c == ':') {
+				// exclude cast, "::"
+				return next != ':' && (pos == 0 || query.charAt(pos - 1) != ':') && Character.isJavaIdentifierPart(next);
+			}
+			return (c == '$' || c == '@') && Character.isJavaIdentifierPart(next);
+		}
+
+		private static boolean isIdentifierEnd(StringBuilder sb) {
+			int length = sb.length();
+			return length > 0 && Character.isJavaIdentifierPart(sb.charAt(length - 1));
+		}
+
+		private static int skipBlockComment(String query, int pos, int length) {
+			int depth = 1;
+			while (pos < length) {
+				char c = query.charAt(pos);
+				if (c == '/' && pos + 1 < length && query.charAt(pos + 1) == '*') {
+					depth++;
+					pos += 2;
+				}
+				else if (c == '*' && pos + 1 < length && query.charAt(pos + 1) == '/') {
+					pos += 2;
+					if (--depth == 0) {
+						return pos;
+					}
+				}
+				else {
+					pos++;
+				}
+			}
+			return pos;
+		}
+
+	}
+
+}
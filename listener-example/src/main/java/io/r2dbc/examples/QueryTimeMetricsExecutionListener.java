@@ -6,6 +6,8 @@ import io.r2dbc.proxy.core.QueryExecutionInfo;
 import io.r2dbc.proxy.core.QueryInfo;
 import io.r2dbc.proxy.listener.ProxyExecutionListener;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import static java.lang.String.format;
 
 /**
@@ -22,7 +24,12 @@ public class QueryTimeMetricsExecutionListener implements ProxyExecutionListener
 
 	private String metricNamePrefix = "r2dbc.";
 
-	private QueryTypeDetector queryTypeDetector = new DefaultQueryTypeDetector();
+	private QueryTypeDetector queryTypeDetector = new ScanningQueryTypeDetector();
+
+	private TimerDistribution timerDistribution = new TimerDistribution();
+
+	// indexed by QueryType ordinal. registered on first use
+	private volatile AtomicReferenceArray<Timer> timers = new AtomicReferenceArray<>(QueryType.values().length);
 
 	public QueryTimeMetricsExecutionListener(MeterRegistry registry) {
 		this.registry = registry;
@@ -30,27 +37,77 @@ public class QueryTimeMetricsExecutionListener implements ProxyExecutionListener
 
 	@Override
 	public void afterQuery(QueryExecutionInfo queryExecutionInfo) {
+		AtomicReferenceArray<Timer> timers = this.timers;
 		for (QueryInfo queryInfo : queryExecutionInfo.getQueries()) {
-			String queryType = this.queryTypeDetector.detect(queryInfo.getQuery()).name().toLowerCase();
-			String metricsName = this.metricNamePrefix + "query." + queryType;
-			String description = format("Time to execute %s queries", queryType);
-
-			Timer timer = Timer
-					.builder(metricsName)
-					.description(description)
-					.tags("event", "query")
-					.register(this.registry);
-			timer.record(queryExecutionInfo.getExecuteDuration());
+			QueryType queryType = this.queryTypeDetector.detect(queryInfo.getQuery());
+			getTimer(timers, queryType).record(queryExecutionInfo.getExecuteDuration());
+		}
+	}
+
+	private Timer getTimer(AtomicReferenceArray<Timer> timers, QueryType type) {
+		Timer timer = timers.get(type.ordinal());
+		if (timer == null) {
+			// registering the same meter returns the one already registered
+			timer = createTimer(type);
+			timers.compareAndSet(type.ordinal(), null, timer);
+		}
+		return timer;
+	}
+
+	private Timer createTimer(QueryType type) {
+		String queryType = type.name().toLowerCase();
+		String metricsName = this.metricNamePrefix + "query." + queryType;
+		String description = format("Time to execute %s queries", queryType);
+
+		Timer.Builder builder = Timer
+				.builder(metricsName)
+				.description(description)
+				.tags("event", "query");
+		return this.timerDistribution.apply(builder).register(this.registry);
+	}
+
+	/**
+	 * Remove registered query timers from the registry, so that they are registered again
+	 * with the current configuration on next use.
+	 * <p>
+	 * Called after the configuration is updated. Otherwise, a concurrent query could register
+	 * a timer with the previous configuration into the new array.
+	 *
+	 * @param registry registry the current timers are registered to
+	 */
+	private void resetTimers(MeterRegistry registry) {
+		AtomicReferenceArray<Timer> timers = this.timers;
+		this.timers = new AtomicReferenceArray<>(QueryType.values().length);
+		for (int i = 0; i < timers.length(); i++) {
+			Timer timer = timers.get(i);
+			if (timer != null) {
+				registry.remove(timer);
+			}
 		}
 	}
 
 
 	public void setRegistry(MeterRegistry registry) {
+		MeterRegistry previousRegistry = this.registry;
 		this.registry = registry;
+		resetTimers(previousRegistry);
 	}
 
 	public void setMetricNamePrefix(String metricNamePrefix) {
 		this.metricNamePrefix = metricNamePrefix;
+		resetTimers(this.registry);
+	}
+
+	/**
+	 * Set distribution statistics, such as percentile histogram and SLO buckets, for the
+	 * query timers. Already registered query timers are removed from the registry and
+	 * registered again with the configuration.
+	 *
+	 * @param timerDistribution distribution statistics configuration
+	 */
+	public void setTimerDistribution(TimerDistribution timerDistribution) {
+		this.timerDistribution = timerDistribution;
+		resetTimers(this.registry);
 	}
 
 	public void setQueryTypeDetector(QueryTypeDetector queryTypeDetector) {
@@ -65,6 +122,12 @@ public class QueryTimeMetricsExecutionListener implements ProxyExecutionListener
 		QueryType detect(String query);
 	}
 
+	/**
+	 * {@link QueryTypeDetector} that removes comments and whitespace with regular expressions
+	 * and checks the first six characters.
+	 * <p>
+	 * {@link ScanningQueryTypeDetector} is used by default.
+	 */
 	public static class DefaultQueryTypeDetector implements QueryTypeDetector {
 		@Override
 		public QueryType detect(String query) {
@@ -0,0 +1,179 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryType;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryTypeDetector;
+
+/**
+ * {@link QueryTypeDetector} that detects the query type by scanning the leading keyword.
+ * <p>
+ * Query characters are read once without creating intermediate strings. Whitespace,
+ * line comments(<code>--</code>), nested block comments(<code>/* *&#47;</code>) and opening
+ * parentheses in front of the keyword are skipped. Keywords are matched case-insensitively.
+ * <p>
+ * For common table expressions({@code WITH ... SELECT}), the type is decided by the statement
+ * that follows the table expressions. {@code VALUES} is detected as {@link QueryType#SELECT}.
+ * Other statements, such as {@code MERGE}, {@code UPSERT} and {@code CALL}, are
+ * {@link QueryType#OTHER}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+public class ScanningQueryTypeDetector implements QueryTypeDetector {
+
+	@Override
+	public QueryType detect(String query) {
+		if (query == null) {
+			return QueryType.OTHER;
+		}
+
+		int length = query.length();
+		int pos = skipIgnorable(query, 0, length);
+		while (pos < length && query.charAt(pos) == '(') {
+			pos = skipIgnorable(query, pos + 1, length);
+		}
+
+		if (matchesKeyword(query, pos, "WITH")) {
+			return detectAfterTableExpressions(query, pos + 4, length);
+		}
+
+		QueryType type = statementType(query, pos);
+		return type != null ? type : QueryType.OTHER;
+	}
+
+	/**
+	 * Find the statement following the table expressions of {@code WITH} clause.
+	 * Keywords within parentheses, quotes or comments are not considered.
+	 */
+	private QueryType detectAfterTableExpressions(String query, int pos, int length) {
+		int depth = 0;
+		while (pos < length) {
+			char c = query.charAt(pos);
+			if (c == '(') {
+				depth++;
+				pos++;
+			}
+			else if (c == ')') {
+				depth--;
+				pos++;
+			}
+			else if (c == '\'' || c == '"' || c == '`') {
+				pos = skipQuoted(query, pos, length);
+			}
+			else if (isCommentStart(query, pos, length) || Character.isWhitespace(c)) {
+				pos = skipIgnorable(query, pos, length);
+			}
+			else if (Character.isJavaIdentifierStart(c)) {
+				if (depth == 0) {
+					QueryType type = statementType(query, pos);
+					if (type != null) {
+						return type;
+					}
+				}
+				pos++;
+				while (pos < length && Character.isJavaIdentifierPart(query.charAt(pos))) {
+					pos++;
+				}
+			}
+			else {
+				pos++;
+			}
+		}
+		return QueryType.OTHER;
+	}
+
+	/**
+	 * @return query type when a statement keyword is at the position, otherwise {@code null}
+	 */
+	private QueryType statementType(String query, int pos) {
+		switch (Character.toUpperCase(pos < query.length() ? query.charAt(pos) : ' ')) {
+			case 'S':
+				return matchesKeyword(query, pos, "SELECT") ? QueryType.SELECT : null;
+			case 'I':
+				return matchesKeyword(query, pos, "INSERT") ? QueryType.INSERT : null;
+			case 'U':
+				return matchesKeyword(query, pos, "UPDATE") ? QueryType.UPDATE : null;
+			case 'D':
+				return matchesKeyword(query, pos, "DELETE") ? QueryType.DELETE : null;
+			case 'V':
+				return matchesKeyword(query, pos, "VALUES") ? QueryType.SELECT : null;
+			case 'M':
+				return matchesKeyword(query, pos, "MERGE") ? QueryType.OTHER : null;
+			default:
+				return null;
+		}
+	}
+
+	private boolean matchesKeyword(String query, int pos, String keyword) {
+		int end = pos + keyword.length();
+		if (end > query.length() || !query.regionMatches(true, pos, keyword, 0, keyword.length())) {
+			return false;
+		}
+		return end == query.length() || !Character.isJavaIdentifierPart(query.charAt(end));
+	}
+
+	private int skipIgnorable(String query, int pos, int length) {
+		while (pos < length) {
+			char c = query.charAt(pos);
+			if (Character.isWhitespace(c)) {
+				pos++;
+			}
+			else if (c == '-' && pos + 1 < length && query.charAt(pos + 1) == '-') {
+				pos = skipLineComment(query, pos + 2, length);
+			}
+			else if (c == '/' && pos + 1 < length && query.charAt(pos + 1) == '*') {
+				pos = skipBlockComment(query, pos + 2, length);
+			}
+			else {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	private boolean isCommentStart(String query, int pos, int length) {
+		if (pos + 1 >= length) {
+			return false;
+		}
+		char c = query.charAt(pos);
+		char next = query.charAt(pos + 1);
+		return (c == '-' && next == '-') || (c == '/' && next == '*');
+	}
+
+	private int skipLineComment(String query, int pos, int length) {
+		while (pos < length && query.charAt(pos) != '\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+	private int skipBlockComment(String query, int pos, int length) {
+		int depth = 1;
+		while (pos < length) {
+			char c = query.charAt(pos);
+			if (c == '/' && pos + 1 < length && query.charAt(pos + 1) == '*') {
+				depth++;
+				pos += 2;
+			}
+			else if (c == '*' && pos + 1 < length && query.charAt(pos + 1) == '/') {
+				pos += 2;
+				if (--depth == 0) {
+					return pos;
+				}
+			}
+			else {
+				pos++;
+			}
+		}
+		return pos;
+	}
+
+	private int skipQuoted(String query, int pos, int length) {
+		// doubled quote as an escape is handled as two consecutive quoted sections
+		char quote = query.charAt(pos);
+		pos++;
+		while (pos < length && query.charAt(pos) != quote) {
+			pos++;
+		}
+		return pos + 1;
+	}
+
+}
@@ -19,17 +19,71 @@ import io.r2dbc.spi.Wrapped;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
+import org.springframework.aop.MethodMatcher;
+import org.springframework.aop.SpringProxy;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.AdvisedSupport;
+import org.springframework.aop.framework.AopProxy;
+import org.springframework.aop.framework.AopProxyFactory;
+import org.springframework.aop.framework.DefaultAopProxyFactory;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcher;
+import org.springframework.aop.target.SingletonTargetSource;
+import org.springframework.core.DecoratingProxy;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * {@link io.r2dbc.proxy.callback.ProxyFactory} implementation that uses spring's {@link ProxyFactory} to create proxy.
+ * <p>
+ * When {@link #setPrecomputeProxyConfiguration(boolean)} is enabled, proxy interfaces, proxy
+ * class constructor and interceptor chain are prepared once per proxied interface type.
+ * Creating a proxy only binds the target and the callback handler.
+ * <p>
+ * {@link #setInterceptedMethodMatcher(MethodMatcher)} limits the methods that go through
+ * r2dbc-proxy. Other methods are directly invoked on the target.
  *
  * @author Tadaya Tsuyukubo
  */
 public class SpringAopProxyFactory implements io.r2dbc.proxy.callback.ProxyFactory {
 
+	private static final AopProxyFactory AOP_PROXY_FACTORY = new DefaultAopProxyFactory();
+
+	private static final Class<?>[] PROXY_INTERFACES = {ConnectionFactory.class, Connection.class, Batch.class, Statement.class, Result.class};
+
 	private ProxyConfig proxyConfig;
 
+	/**
+	 * {@link MethodMatcher} that matches all methods except {@link Statement#bind} and
+	 * {@link Statement#bindNull}. Bindings are not available to listeners with this matcher.
+	 */
+	public static final MethodMatcher EXCLUDE_BIND_METHODS = new StaticMethodMatcher() {
+		@Override
+		public boolean matches(Method method, Class<?> targetClass) {
+			if (Statement.class.equals(method.getDeclaringClass())) {
+				String methodName = method.getName();
+				return !"bind".equals(methodName) && !"bindNull".equals(methodName);
+			}
+			return true;
+		}
+	};
+
+	private MethodMatcher interceptedMethodMatcher = MethodMatcher.TRUE;
+
+	private Map<Class<?>, ProxyType> proxyTypes;  // null unless proxy configuration is precomputed
+
 	public SpringAopProxyFactory(ProxyConfig proxyConfig) {
 		this.proxyConfig = proxyConfig;
 	}
@@ -55,6 +109,11 @@ public class SpringAopProxyFactory implements io.r2dbc.proxy.callback.ProxyFacto
 	private <T> T createProxy(CallbackHandler callbackHandler, Object target, Class<T> proxyInterface) {
 		ProxyInterceptor interceptor = new ProxyInterceptor(callbackHandler);
 
+		Map<Class<?>, ProxyType> proxyTypes = this.proxyTypes;
+		if (proxyTypes != null) {
+			return proxyInterface.cast(proxyTypes.get(proxyInterface).createProxy(target, interceptor));
+		}
+
 		// NOTE: This ProxyFactory will use jdk dynamic proxy.
 		// This is because we try to make a proxy on interface, and spring's ProxyFactory
 		// uses JdkDynamicAopProxy for it.
@@ -66,7 +125,14 @@ public class SpringAopProxyFactory implements io.r2dbc.proxy.callback.ProxyFacto
 		// it is ok to use jdk dynamic proxy.
 
 		ProxyFactory proxyFactory = new ProxyFactory(target);
-		proxyFactory.addAdvice(interceptor);
+		if (this.interceptedMethodMatcher == MethodMatcher.TRUE) {
+			proxyFactory.addAdvice(interceptor);
+		}
+		else {
+			// not matched methods are directly invoked on the target
+			proxyFactory.addAdvisor(new DefaultPointcutAdvisor(new ComposablePointcut(this.interceptedMethodMatcher), interceptor));
+		}
+
 		proxyFactory.addInterface(proxyInterface);
 		proxyFactory.addInterface(Wrapped.class);  // add this to all proxies
 		T proxy = proxyInterface.cast(proxyFactory.getProxy());
@@ -74,6 +140,140 @@ public class SpringAopProxyFactory implements io.r2dbc.proxy.callback.ProxyFacto
 		return proxy;
 	}
 
+	/**
+	 * Set the {@link MethodMatcher} to select methods that are intercepted by r2dbc-proxy.
+	 * Other methods are directly invoked on the target without creating a method invocation.
+	 * <p>
+	 * Methods that return R2DBC objects to be observed, such as {@code Connection#createStatement}
+	 * and {@code Statement#execute}, need to be matched; otherwise, returned objects are not
+	 * proxied. {@link Wrapped} methods are always intercepted.
+	 * <p>
+	 * With precomputed proxy configuration, the matching result is cached per method.
+	 *
+	 * @param interceptedMethodMatcher method matcher
+	 * @see #EXCLUDE_BIND_METHODS
+	 */
+	public void setInterceptedMethodMatcher(MethodMatcher interceptedMethodMatcher) {
+		this.interceptedMethodMatcher = interceptedMethodMatcher == MethodMatcher.TRUE ?
+				MethodMatcher.TRUE : new InterceptedMethodMatcher(interceptedMethodMatcher);
+		if (this.proxyTypes != null) {
+			setPrecomputeProxyConfiguration(true);  // reset cached matching result
+		}
+	}
+
+	/**
+	 * When enabled, proxy interfaces, proxy class constructor and interceptor chain are
+	 * computed once per proxied interface type and reused for all proxies.
+	 *
+	 * @param precomputeProxyConfiguration {@code true} to precompute proxy configuration
+	 */
+	public void setPrecomputeProxyConfiguration(boolean precomputeProxyConfiguration) {
+		if (!precomputeProxyConfiguration) {
+			this.proxyTypes = null;
+			return;
+		}
+		ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+		Map<Class<?>, ProxyType> proxyTypes = new HashMap<>();
+		for (Class<?> proxyInterface : PROXY_INTERFACES) {
+			proxyTypes.put(proxyInterface, new ProxyType(proxyInterface, classLoader, this.interceptedMethodMatcher));
+		}
+		this.proxyTypes = proxyTypes;
+	}
+
+	/**
+	 * Precomputed proxy configuration for a proxied interface.
+	 */
+	private static class ProxyType {
+
+		private final Class<?>[] interfaces;
+
+		private final Constructor<?> proxyConstructor;
+
+		private final MethodMatcher methodMatcher;
+
+		private final ConcurrentMap<Method, Boolean> interceptedMethods = new ConcurrentHashMap<>();
+
+		ProxyType(Class<?> proxyInterface, ClassLoader classLoader, MethodMatcher methodMatcher) {
+			this.interfaces = new Class<?>[]{proxyInterface, Wrapped.class};
+			this.methodMatcher = methodMatcher;
+
+			// same interfaces as "JdkDynamicAopProxy#getProxy" adds
+			Class<?>[] proxiedInterfaces = new Class<?>[]{proxyInterface, Wrapped.class, SpringProxy.class, Advised.class, DecoratingProxy.class};
+			try {
+				this.proxyConstructor = Proxy.getProxyClass(classLoader, proxiedInterfaces).getConstructor(InvocationHandler.class);
+			}
+			catch (NoSuchMethodException e) {
+				throw new IllegalStateException("Failed to find proxy constructor for " + proxyInterface, e);
+			}
+		}
+
+		Object createProxy(Object target, MethodInterceptor interceptor) {
+			AdvisedSupport advised = new PrecomputedAdvisedSupport(this, interceptor);
+			advised.setTargetSource(new SingletonTargetSource(target));
+
+			// with interfaces, "DefaultAopProxyFactory" creates "JdkDynamicAopProxy" which is an InvocationHandler
+			AopProxy aopProxy = AOP_PROXY_FACTORY.createAopProxy(advised);
+			try {
+				return this.proxyConstructor.newInstance((InvocationHandler) aopProxy);
+			}
+			catch (Exception e) {
+				throw new RuntimeException("Failed to create a proxy", e);
+			}
+		}
+
+		boolean isIntercepted(Method method, Class<?> targetClass) {
+			if (this.methodMatcher == MethodMatcher.TRUE) {
+				return true;
+			}
+			Boolean intercepted = this.interceptedMethods.get(method);
+			if (intercepted == null) {
+				intercepted = this.methodMatcher.matches(method, targetClass);
+				this.interceptedMethods.putIfAbsent(method, intercepted);
+			}
+			return intercepted;
+		}
+	}
+
+	/**
+	 * {@link AdvisedSupport} that returns the single interceptor without resolving and
+	 * caching the advisor chain per method.
+	 * For methods not intercepted, returns an empty chain, so that the target is directly invoked.
+	 */
+	private static class PrecomputedAdvisedSupport extends AdvisedSupport {
+
+		private final ProxyType proxyType;
+
+		private final List<Object> interceptors;
+
+		PrecomputedAdvisedSupport(ProxyType proxyType, MethodInterceptor interceptor) {
+			super(proxyType.interfaces);
+			this.proxyType = proxyType;
+			this.interceptors = Collections.singletonList(interceptor);
+		}
+
+		@Override
+		public List<Object> getInterceptorsAndDynamicInterceptionAdvice(Method method, Class<?> targetClass) {
+			return this.proxyType.isIntercepted(method, targetClass) ? this.interceptors : Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Always intercept {@link Wrapped} methods, since targets may not implement it.
+	 */
+	private static class InterceptedMethodMatcher extends StaticMethodMatcher {
+
+		private final MethodMatcher delegate;
+
+		InterceptedMethodMatcher(MethodMatcher delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean matches(Method method, Class<?> targetClass) {
+			return Wrapped.class.equals(method.getDeclaringClass()) || this.delegate.matches(method, targetClass);
+		}
+	}
+
 	@Override
 	public ConnectionFactory wrapConnectionFactory(ConnectionFactory connectionFactory) {
 		ConnectionFactoryCallbackHandler handler = new ConnectionFactoryCallbackHandler(connectionFactory, this.proxyConfig);
@@ -0,0 +1,92 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+
+/**
+ * Distribution statistics configuration for {@link Timer}s created by listeners.
+ * <p>
+ * The configuration is applied when a timer is registered. Recording to the registered
+ * timer does not consult this configuration. Since a registry returns the existing timer
+ * for the same name and tags, listeners remove the registered timers from the registry when
+ * the configuration is changed, and register them again.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see MetricsExecutionListener#setConnectionTimerDistribution(TimerDistribution)
+ * @see MetricsExecutionListener#setQueryTimerDistribution(TimerDistribution)
+ * @see QueryTimeMetricsExecutionListener#setTimerDistribution(TimerDistribution)
+ */
+public class TimerDistribution {
+
+	private boolean percentileHistogram;
+
+	private double[] percentiles;
+
+	private Duration[] serviceLevelObjectives;
+
+	private Duration minimumExpectedValue;
+
+	private Duration maximumExpectedValue;
+
+	/**
+	 * Apply the configuration to the timer builder.
+	 *
+	 * @param builder timer builder
+	 * @return the timer builder
+	 */
+	public Timer.Builder apply(Timer.Builder builder) {
+		if (this.percentileHistogram) {
+			builder.publishPercentileHistogram();
+		}
+		if (this.percentiles != null) {
+			builder.publishPercentiles(this.percentiles);
+		}
+		if (this.serviceLevelObjectives != null) {
+			builder.serviceLevelObjectives(this.serviceLevelObjectives);
+		}
+		if (this.minimumExpectedValue != null) {
+			builder.minimumExpectedValue(this.minimumExpectedValue);
+		}
+		if (this.maximumExpectedValue != null) {
+			builder.maximumExpectedValue(this.maximumExpectedValue);
+		}
+		return builder;
+	}
+
+	/**
+	 * @param percentileHistogram {@code true} to publish histogram buckets for server-side percentiles
+	 */
+	public void setPercentileHistogram(boolean percentileHistogram) {
+		this.percentileHistogram = percentileHistogram;
+	}
+
+	/**
+	 * @param percentiles percentiles to compute on client side, e.g. {@code 0.5, 0.99}
+	 */
+	public void setPercentiles(double... percentiles) {
+		this.percentiles = percentiles;
+	}
+
+	/**
+	 * @param serviceLevelObjectives durations to publish as histogram buckets, e.g. SLO boundaries
+	 */
+	public void setServiceLevelObjectives(Duration... serviceLevelObjectives) {
+		this.serviceLevelObjectives = serviceLevelObjectives;
+	}
+
+	/**
+	 * @param minimumExpectedValue lower bound of histogram buckets
+	 */
+	public void setMinimumExpectedValue(Duration minimumExpectedValue) {
+		this.minimumExpectedValue = minimumExpectedValue;
+	}
+
+	/**
+	 * @param maximumExpectedValue upper bound of histogram buckets
+	 */
+	public void setMaximumExpectedValue(Duration maximumExpectedValue) {
+		this.maximumExpectedValue = maximumExpectedValue;
+	}
+
+}
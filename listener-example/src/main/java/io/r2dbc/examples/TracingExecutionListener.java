@@ -2,13 +2,28 @@ package io.r2dbc.examples;
 
 import brave.Span;
 import brave.Tracer;
+import io.r2dbc.examples.QueryFingerprintMetricsExecutionListener.DefaultQueryFingerprinter;
+import io.r2dbc.examples.QueryFingerprintMetricsExecutionListener.QueryFingerprinter;
 import io.r2dbc.proxy.core.*;
 import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
 
-import static java.util.stream.Collectors.joining;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Listener to create spans for R2DBC SPI operations.
+ * <p>
+ * The "queries" tag is built only for sampled spans, and truncated at {@link #setMaxQueryTagLength(int)}.
+ * With {@link #setBatchQueryFingerprint(boolean)}, the tag for batch executions contains distinct query
+ * fingerprints with their counts instead of every query.
+ * <p>
+ * Spans of unsampled traces are noop. They are not stored to {@link ValueStore}s, and the following
+ * callbacks for the connection, transaction or query return without computing tags.
+ * <p>
+ * With {@link #setFetchTiming(boolean)}, query spans are annotated when the first row is mapped, and
+ * tagged with row count, time to first row, fetch time and inter-row latency percentiles.
  *
  * @author Tadaya Tsuyukubo
  */
@@ -30,13 +45,30 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
     private static final String TAG_TRANSACTION_COUNT = "transactionCount";
     private static final String TAG_COMMIT_COUNT = "commitCount";
     private static final String TAG_ROLLBACK_COUNT = "rollbackCount";
+    private static final String TAG_FETCH_ROW_COUNT = "rowCount";
+    private static final String TAG_FETCH_TIME_TO_FIRST_ROW = "timeToFirstRowMicros";
+    private static final String TAG_FETCH_TIME = "fetchTimeMicros";
+    private static final String TAG_FETCH_INTER_ROW_P50 = "interRowP50Micros";
+    private static final String TAG_FETCH_INTER_ROW_P99 = "interRowP99Micros";
+    private static final String TAG_FETCH_INTER_ROW_MAX = "interRowMaxMicros";
 
     static final String CONNECTION_SPAN_KEY = "connectionSpan";
     static final String TRANSACTION_SPAN_KEY = "transactionSpan";
     static final String QUERY_SPAN_KEY = "querySpan";
+    static final String FETCH_TIMING_KEY = "fetchTiming";
+
+    private static final String TRUNCATED_SUFFIX = "...";
 
     private final Tracer tracer;
 
+    private int maxQueryTagLength = Integer.MAX_VALUE;
+
+    private boolean batchQueryFingerprint;
+
+    private QueryFingerprinter queryFingerprinter = new DefaultQueryFingerprinter();
+
+    private boolean fetchTiming;
+
     public TracingExecutionListener(Tracer tracer) {
         this.tracer = tracer;
     }
@@ -47,6 +79,9 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
                 .name("r2dbc:connection")
                 .kind(Span.Kind.CLIENT)
                 .start();
+        if (connectionSpan.isNoop()) {
+            return;  // not sampled
+        }
 
         // store the span for retrieval at "afterCreateOnConnectionFactory"
         methodExecutionInfo.getValueStore().put("initialConnectionSpan", connectionSpan);
@@ -56,6 +91,9 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
     public void afterCreateOnConnectionFactory(MethodExecutionInfo methodExecutionInfo) {
         // retrieve the span created at "beforeCreateOnConnectionFactory"
         Span connectionSpan = methodExecutionInfo.getValueStore().get("initialConnectionSpan", Span.class);
+        if (connectionSpan == null) {
+            return;  // not sampled
+        }
 
         Throwable thrown = methodExecutionInfo.getThrown();
         if (thrown != null) {
@@ -81,11 +119,11 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
     @Override
     public void afterCloseOnConnection(MethodExecutionInfo methodExecutionInfo) {
         ConnectionInfo connectionInfo = methodExecutionInfo.getConnectionInfo();
-        String connectionId = connectionInfo.getConnectionId();
         Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
         if (connectionSpan == null) {
-            return;    // already closed
+            return;    // already closed or not sampled
         }
+        String connectionId = connectionInfo.getConnectionId();
         Throwable thrown = methodExecutionInfo.getThrown();
         if (thrown != null) {
             connectionSpan.error(thrown);
@@ -102,32 +140,88 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
 
     @Override
     public void beforeQuery(QueryExecutionInfo queryExecutionInfo) {
-        String connectionId = queryExecutionInfo.getConnectionInfo().getConnectionId();
-
-        String queries = queryExecutionInfo.getQueries().stream()
-                .map(QueryInfo::getQuery)
-                .collect(joining(", "));
-
         Span querySpan = this.tracer
                 .nextSpan()
                 .name("r2dbc:query")
-                .kind(Span.Kind.CLIENT)
+                .kind(Span.Kind.CLIENT);
+
+        // tags are discarded for unsampled span. skip building the query string.
+        if (querySpan.isNoop()) {
+            return;
+        }
+
+        String connectionId = queryExecutionInfo.getConnectionInfo().getConnectionId();
+        querySpan
                 .tag(TAG_CONNECTION_ID, connectionId)
                 .tag(TAG_QUERY_TYPE, queryExecutionInfo.getType().toString())
-                .tag(TAG_QUERIES, queries)
-                .start();
+                .tag(TAG_QUERIES, getQueries(queryExecutionInfo));
 
         if (ExecutionType.BATCH == queryExecutionInfo.getType()) {
             querySpan.tag(TAG_BATCH_SIZE, Integer.toString(queryExecutionInfo.getBatchSize()));
         }
+        querySpan.start();
 
         // pass the query span to "afterQuery" method
         queryExecutionInfo.getValueStore().put(QUERY_SPAN_KEY, querySpan);
+
+        if (this.fetchTiming) {
+            queryExecutionInfo.getValueStore().put(FETCH_TIMING_KEY, new FetchTiming(querySpan, System.nanoTime()));
+        }
+    }
+
+    @Override
+    public void eachQueryResult(QueryExecutionInfo queryExecutionInfo) {
+        FetchTiming fetchTiming = queryExecutionInfo.getValueStore().get(FETCH_TIMING_KEY, FetchTiming.class);
+        if (fetchTiming == null) {
+            return;  // disabled or not sampled
+        }
+        fetchTiming.onRow(System.nanoTime());
+    }
+
+    private String getQueries(QueryExecutionInfo queryExecutionInfo) {
+        List<QueryInfo> queries = queryExecutionInfo.getQueries();
+
+        if (this.batchQueryFingerprint && ExecutionType.BATCH == queryExecutionInfo.getType()) {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (QueryInfo queryInfo : queries) {
+                counts.merge(this.queryFingerprinter.fingerprint(queryInfo.getQuery()), 1, Integer::sum);
+            }
+            return joinQueries(() -> counts.entrySet().stream()
+                    .map(entry -> entry.getKey() + " (x" + entry.getValue() + ")")
+                    .iterator());
+        }
+        return joinQueries(() -> queries.stream().map(QueryInfo::getQuery).iterator());
+    }
+
+    /**
+     * Join the values with ", ". When the result exceeds {@link #maxQueryTagLength}, it is
+     * truncated, including the "..." suffix, to the max length.
+     */
+    private String joinQueries(Iterable<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > this.maxQueryTagLength) {
+                break;  // no need to append values that will be truncated
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(value);
+        }
+
+        if (sb.length() > this.maxQueryTagLength) {
+            sb.setLength(this.maxQueryTagLength - TRUNCATED_SUFFIX.length());
+            sb.append(TRUNCATED_SUFFIX);
+        }
+        return sb.toString();
     }
 
     @Override
     public void afterQuery(QueryExecutionInfo queryExecutionInfo) {
         Span querySpan = queryExecutionInfo.getValueStore().get(QUERY_SPAN_KEY, Span.class);
+        if (querySpan == null) {
+            return;  // not sampled
+        }
         querySpan
                 .tag(TAG_THREAD_ID, String.valueOf(queryExecutionInfo.getThreadId()))
                 .tag(TAG_THREAD_NAME, queryExecutionInfo.getThreadName())
@@ -139,6 +233,11 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
         } else {
             querySpan.tag(TAG_QUERY_MAPPED_RESULT_COUNT, Integer.toString(queryExecutionInfo.getCurrentResultCount()));
         }
+
+        FetchTiming fetchTiming = queryExecutionInfo.getValueStore().get(FETCH_TIMING_KEY, FetchTiming.class);
+        if (fetchTiming != null) {
+            fetchTiming.tag(querySpan);
+        }
         querySpan.finish();
     }
 
@@ -148,8 +247,14 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
                 .name("r2dbc:transaction")
                 .kind(Span.Kind.CLIENT)
                 .start();
+        ValueStore valueStore = methodExecutionInfo.getConnectionInfo().getValueStore();
+        if (transactionSpan.isNoop()) {
+            // not sampled. remove the span of a previous transaction on this connection, if any
+            valueStore.remove(TRANSACTION_SPAN_KEY);
+            return;
+        }
 
-        methodExecutionInfo.getConnectionInfo().getValueStore().put(TRANSACTION_SPAN_KEY, transactionSpan);
+        valueStore.put(TRANSACTION_SPAN_KEY, transactionSpan);
     }
 
     @Override
@@ -165,6 +270,7 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
                     .tag(TAG_THREAD_ID, String.valueOf(methodExecutionInfo.getThreadId()))
                     .tag(TAG_THREAD_NAME, methodExecutionInfo.getThreadName())
                     .finish();
+            connectionInfo.getValueStore().remove(TRANSACTION_SPAN_KEY);
         }
 
         Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
@@ -187,9 +293,13 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
                     .tag(TAG_THREAD_ID, String.valueOf(methodExecutionInfo.getThreadId()))
                     .tag(TAG_THREAD_NAME, methodExecutionInfo.getThreadName())
                     .finish();
+            connectionInfo.getValueStore().remove(TRANSACTION_SPAN_KEY);
         }
 
         Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
+        if (connectionSpan == null) {
+            return;
+        }
         connectionSpan.annotate("Transaction rollback");
     }
 
@@ -208,10 +318,131 @@ public class TracingExecutionListener implements ProxyMethodExecutionListener {
                     .tag(TAG_THREAD_ID, String.valueOf(methodExecutionInfo.getThreadId()))
                     .tag(TAG_THREAD_NAME, methodExecutionInfo.getThreadName())
                     .finish();
+            connectionInfo.getValueStore().remove(TRANSACTION_SPAN_KEY);
         }
 
         Span connectionSpan = connectionInfo.getValueStore().get(CONNECTION_SPAN_KEY, Span.class);
+        if (connectionSpan == null) {
+            return;
+        }
         connectionSpan.annotate("Transaction rollback to savepoint");
     }
 
+    /**
+     * @param maxQueryTagLength max length of "queries" tag value. Longer value is truncated and ends with "...",
+     *                          which is included in the max length.
+     */
+    public void setMaxQueryTagLength(int maxQueryTagLength) {
+        if (maxQueryTagLength <= TRUNCATED_SUFFIX.length()) {
+            throw new IllegalArgumentException("maxQueryTagLength must be greater than " + TRUNCATED_SUFFIX.length());
+        }
+        this.maxQueryTagLength = maxQueryTagLength;
+    }
+
+    /**
+     * @param batchQueryFingerprint {@code true} to tag distinct query fingerprints and their counts for batch executions
+     */
+    public void setBatchQueryFingerprint(boolean batchQueryFingerprint) {
+        this.batchQueryFingerprint = batchQueryFingerprint;
+    }
+
+    public void setQueryFingerprinter(QueryFingerprinter queryFingerprinter) {
+        this.queryFingerprinter = queryFingerprinter;
+    }
+
+    /**
+     * @param fetchTiming {@code true} to record timing of mapping rows for query spans
+     */
+    public void setFetchTiming(boolean fetchTiming) {
+        this.fetchTiming = fetchTiming;
+    }
+
+    /**
+     * Timing of mapping rows for a query.
+     * <p>
+     * Updated for each row, so that aggregation is done in primitive fields without allocation.
+     * Inter-row latency is kept in a histogram with power of two buckets. Rows of a query are
+     * mapped sequentially, therefore fields are not synchronized.
+     */
+    static class FetchTiming {
+
+        // bucket "i" counts intervals in [2^(i-1), 2^i) nanos. bucket 0 counts zero interval.
+        private static final int BUCKETS = 64;
+
+        private final Span span;
+
+        private final long startNanos;
+
+        private final long[] interRowHistogram = new long[BUCKETS];
+
+        private long rowCount;
+
+        private long firstRowNanos;
+
+        private long lastRowNanos;
+
+        private long maxInterRowNanos;
+
+        FetchTiming(Span span, long startNanos) {
+            this.span = span;
+            this.startNanos = startNanos;
+        }
+
+        void onRow(long nanos) {
+            if (this.rowCount++ == 0) {
+                this.firstRowNanos = nanos;
+                this.lastRowNanos = nanos;
+                this.span.annotate("First row");
+                return;
+            }
+            // a non-monotonic clock may go backward
+            long interval = Math.max(0, nanos - this.lastRowNanos);
+            this.lastRowNanos = nanos;
+            if (interval > this.maxInterRowNanos) {
+                this.maxInterRowNanos = interval;
+            }
+            this.interRowHistogram[BUCKETS - Long.numberOfLeadingZeros(interval)]++;
+        }
+
+        /**
+         * @return upper bound of the bucket that contains the percentile, capped by the max interval
+         */
+        long getInterRowPercentileNanos(double percentile) {
+            long intervals = this.rowCount - 1;
+            long rank = (long) Math.ceil(percentile * intervals);
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += this.interRowHistogram[i];
+                if (count >= rank) {
+                    long upperBound = i == 0 ? 0 : i < BUCKETS - 1 ? (1L << i) - 1 : Long.MAX_VALUE;
+                    return Math.min(upperBound, this.maxInterRowNanos);
+                }
+            }
+            return this.maxInterRowNanos;
+        }
+
+        long getRowCount() {
+            return this.rowCount;
+        }
+
+        void tag(Span span) {
+            span.tag(TAG_FETCH_ROW_COUNT, Long.toString(this.rowCount));
+            if (this.rowCount == 0) {
+                return;
+            }
+            span.tag(TAG_FETCH_TIME_TO_FIRST_ROW, Long.toString(toMicros(this.firstRowNanos - this.startNanos)));
+            span.tag(TAG_FETCH_TIME, Long.toString(toMicros(this.lastRowNanos - this.startNanos)));
+            if (this.rowCount == 1) {
+                return;
+            }
+            span.tag(TAG_FETCH_INTER_ROW_P50, Long.toString(toMicros(getInterRowPercentileNanos(0.5))));
+            span.tag(TAG_FETCH_INTER_ROW_P99, Long.toString(toMicros(getInterRowPercentileNanos(0.99))));
+            span.tag(TAG_FETCH_INTER_ROW_MAX, Long.toString(toMicros(this.maxInterRowNanos)));
+        }
+
+        private static long toMicros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
 }
@@ -0,0 +1,117 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Test for {@link AggregatingSlowQueryLogger}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class AggregatingSlowQueryLoggerTest {
+
+    @Test
+    void summary() {
+        AggregatingSlowQueryLogger slowQueryLogger = new AggregatingSlowQueryLogger(Duration.ofHours(1), 2);
+
+        slowQueryLogger.log(queryExecutionInfo("SELECT 1", 100));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 1", 300));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 2", 1000));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 3", 10));
+
+        String summary = slowQueryLogger.flush();
+        assertThat(summary).startsWith("SlowQuery summary: window=3600000ms count=4 distinctQueries=3");
+        assertThat(summary).contains("#1 count=1 total=1000ms max=1000ms mean=1000ms query=\"SELECT 2\"");
+        assertThat(summary).contains("#2 count=2 total=400ms max=300ms mean=200ms query=\"SELECT 1\"");
+        assertThat(summary).as("only top-K are logged").doesNotContain("SELECT 3");
+
+        assertThat(slowQueryLogger.flush()).as("new window starts after flush").isNull();
+
+        slowQueryLogger.close();
+    }
+
+    @Test
+    void maxDistinctQueries() {
+        AggregatingSlowQueryLogger slowQueryLogger = new AggregatingSlowQueryLogger(Duration.ofHours(1), 10, 2);
+
+        slowQueryLogger.log(queryExecutionInfo("SELECT 1", 100));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 2", 100));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 3", 100));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 4", 100));
+        slowQueryLogger.log(queryExecutionInfo("SELECT 1", 100));
+
+        String summary = slowQueryLogger.flush();
+        assertThat(summary).contains("count=5 distinctQueries=3");
+        assertThat(summary).contains("count=2 total=200ms max=100ms mean=100ms query=\"" + AggregatingSlowQueryLogger.OTHER_QUERIES + "\"");
+        assertThat(summary).doesNotContain("SELECT 3", "SELECT 4");
+
+        slowQueryLogger.close();
+    }
+
+    @Test
+    void concurrentLogAndFlush() throws Exception {
+        AggregatingSlowQueryLogger slowQueryLogger = new AggregatingSlowQueryLogger(Duration.ofHours(1), 1);
+
+        int threads = 4;
+        int queriesPerThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < queriesPerThread; j++) {
+                    slowQueryLogger.log(queryExecutionInfo("SELECT " + (j % 10), 100));
+                }
+            }));
+        }
+
+        long logged = 0;
+        while (!futures.stream().allMatch(Future::isDone)) {
+            logged += getCount(slowQueryLogger.flush());
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        logged += getCount(slowQueryLogger.flush());
+        executor.shutdown();
+
+        assertThat(logged).as("no query is lost by swapping windows").isEqualTo(threads * queriesPerThread);
+
+        slowQueryLogger.close();
+    }
+
+    @Test
+    void windowShorterThanMillisecond() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> new AggregatingSlowQueryLogger(Duration.ofNanos(100), 1));
+    }
+
+    private long getCount(String summary) {
+        if (summary == null) {
+            return 0;
+        }
+        Matcher matcher = Pattern.compile(" count=(\\d+) ").matcher(summary);
+        assertThat(matcher.find()).isTrue();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private MockQueryExecutionInfo queryExecutionInfo(String query, long millis) {
+        return MockQueryExecutionInfo.builder()
+                .queryInfo(new QueryInfo(query))
+                .executeDuration(Duration.ofMillis(millis))
+                .build();
+    }
+
+}
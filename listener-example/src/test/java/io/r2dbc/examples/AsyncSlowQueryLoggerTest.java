@@ -0,0 +1,115 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link AsyncSlowQueryLogger}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class AsyncSlowQueryLoggerTest {
+
+    @Test
+    void rateLimit() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AsyncSlowQueryLogger slowQueryLogger = new AsyncSlowQueryLogger(registry, "r2dbc.", 100, 0.001, 3);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .threadName("thread-name")
+                .executeDuration(Duration.ofSeconds(1))
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            slowQueryLogger.log(queryExecutionInfo);
+        }
+        slowQueryLogger.close();
+
+        assertThat(registry.get("r2dbc.query.slow.dropped").tag("reason", "rate-limited").counter().count()).isEqualTo(2);
+        assertThat(registry.get("r2dbc.query.slow.dropped").tag("reason", "queue-full").counter().count()).isEqualTo(0);
+        assertThat(slowQueryLogger.getQueueSize()).as("pending entries are logged at close").isEqualTo(0);
+    }
+
+    @Test
+    void queueFull() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AsyncSlowQueryLogger slowQueryLogger = new AsyncSlowQueryLogger(registry, "r2dbc.", 2, 1000, 100);
+
+        // block the logging thread while formatting the first entry
+        CountDownLatch formatting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        QueryInfo blockingQuery = new QueryInfo("SELECT 1") {
+            @Override
+            public String getQuery() {
+                formatting.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getQuery();
+            }
+        };
+        slowQueryLogger.log(createQueryExecutionInfo(blockingQuery));
+        assertThat(formatting.await(5, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 5; i++) {
+            slowQueryLogger.log(createQueryExecutionInfo(new QueryInfo("SELECT 2")));
+        }
+        assertThat(slowQueryLogger.getQueueSize()).isEqualTo(2);
+
+        release.countDown();
+        slowQueryLogger.close();
+
+        assertThat(registry.get("r2dbc.query.slow.dropped").tag("reason", "queue-full").counter().count()).isEqualTo(3);
+        assertThat(registry.get("r2dbc.query.slow.dropped").tag("reason", "rate-limited").counter().count()).isEqualTo(0);
+        assertThat(slowQueryLogger.getQueueSize()).isEqualTo(0);
+    }
+
+    @Test
+    void continueAfterLoggingFailure() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AsyncSlowQueryLogger slowQueryLogger = new AsyncSlowQueryLogger(registry, "r2dbc.", 10, 1000, 100);
+
+        AtomicInteger formatted = new AtomicInteger();
+        QueryInfo failingQuery = new QueryInfo("SELECT 1") {
+            @Override
+            public String getQuery() {
+                throw new IllegalStateException("failed to format");
+            }
+        };
+        QueryInfo countingQuery = new QueryInfo("SELECT 2") {
+            @Override
+            public String getQuery() {
+                formatted.incrementAndGet();
+                return super.getQuery();
+            }
+        };
+        slowQueryLogger.log(createQueryExecutionInfo(failingQuery));
+        slowQueryLogger.log(createQueryExecutionInfo(countingQuery));
+        slowQueryLogger.close();
+
+        assertThat(formatted.get()).as("entries after the failure are still logged").isEqualTo(1);
+        assertThat(slowQueryLogger.getQueueSize()).isEqualTo(0);
+    }
+
+    private static MockQueryExecutionInfo createQueryExecutionInfo(QueryInfo queryInfo) {
+        return MockQueryExecutionInfo.builder()
+                .queryInfo(queryInfo)
+                .threadName("thread-name")
+                .executeDuration(Duration.ofSeconds(1))
+                .build();
+    }
+
+}
@@ -0,0 +1,88 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryType;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryTypeDetector;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link CachingQueryTypeDetector}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class CachingQueryTypeDetectorTest {
+
+    @Test
+    void detect() {
+        AtomicInteger delegateCount = new AtomicInteger();
+        QueryTypeDetector delegate = query -> {
+            delegateCount.incrementAndGet();
+            return QueryType.SELECT;
+        };
+        CachingQueryTypeDetector detector = new CachingQueryTypeDetector(delegate);
+
+        assertThat(detector.detect("SELECT 1")).isEqualTo(QueryType.SELECT);
+        assertThat(detector.detect("SELECT 1")).isEqualTo(QueryType.SELECT);
+        assertThat(detector.detect("SELECT 1")).isEqualTo(QueryType.SELECT);
+
+        assertThat(delegateCount).hasValue(1);
+        assertThat(detector.getMissCount()).isEqualTo(1);
+        assertThat(detector.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void nullQuery() {
+        CachingQueryTypeDetector detector = new CachingQueryTypeDetector();
+        assertThat(detector.detect(null)).isEqualTo(QueryType.OTHER);
+        assertThat(detector.size()).isEqualTo(0);
+    }
+
+    @Test
+    void bounded() {
+        CachingQueryTypeDetector detector = new CachingQueryTypeDetector(query -> QueryType.OTHER, 10);
+        for (int i = 0; i < 100; i++) {
+            detector.detect("SELECT " + i);
+        }
+        assertThat(detector.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void recentlyUsedEntrySurvivesRotation() {
+        AtomicInteger delegateCount = new AtomicInteger();
+        QueryTypeDetector delegate = query -> {
+            delegateCount.incrementAndGet();
+            return QueryType.OTHER;
+        };
+        CachingQueryTypeDetector detector = new CachingQueryTypeDetector(delegate, 4);
+
+        detector.detect("hot");
+        for (int i = 0; i < 10; i++) {
+            detector.detect("cold-" + i);
+            detector.detect("hot");
+        }
+
+        // "hot" is detected only once and the rest are all cache hits
+        assertThat(delegateCount).hasValue(11);
+        assertThat(detector.getHitCount()).isEqualTo(10);
+    }
+
+    @Test
+    void metrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CachingQueryTypeDetector detector = new CachingQueryTypeDetector();
+        detector.bindTo(registry);
+
+        detector.detect("SELECT 1");
+        detector.detect("SELECT 1");
+        detector.detect("INSERT ...");
+
+        assertThat(registry.get("r2dbc.query.type.cache.gets").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("r2dbc.query.type.cache.gets").tag("result", "miss").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("r2dbc.query.type.cache.size").gauge().value()).isEqualTo(2);
+    }
+
+}
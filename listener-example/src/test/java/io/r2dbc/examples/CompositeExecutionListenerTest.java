@@ -0,0 +1,147 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.proxy.core.ExecutionType;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyExecutionListener;
+import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
+import io.r2dbc.proxy.test.MockMethodExecutionInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import io.r2dbc.spi.Connection;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for {@link CompositeExecutionListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class CompositeExecutionListenerTest {
+
+    @Test
+    void methodCallbacks() throws Exception {
+        List<String> calls = new ArrayList<>();
+        CompositeExecutionListener listener = CompositeExecutionListener.builder()
+                .listener(new ProxyMethodExecutionListener() {
+                    @Override
+                    public void beforeMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("first:beforeMethod");
+                    }
+
+                    @Override
+                    public void beforeCreateStatementOnConnection(MethodExecutionInfo executionInfo) {
+                        calls.add("first:beforeCreateStatement");
+                    }
+
+                    @Override
+                    public void afterCreateStatementOnConnection(MethodExecutionInfo executionInfo) {
+                        calls.add("first:afterCreateStatement");
+                    }
+
+                    @Override
+                    public void afterMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("first:afterMethod");
+                    }
+                })
+                .listener(new ProxyMethodExecutionListener() {
+                    @Override
+                    public void afterCreateStatementOnConnection(MethodExecutionInfo executionInfo) {
+                        calls.add("second:afterCreateStatement");
+                    }
+                })
+                .listener(new ProxyExecutionListener() {
+                    @Override
+                    public void beforeMethod(MethodExecutionInfo executionInfo) {
+                        calls.add("third:beforeMethod");
+                    }
+                })
+                .build();
+
+        Method createStatement = Connection.class.getMethod("createStatement", String.class);
+        MockMethodExecutionInfo executionInfo = MockMethodExecutionInfo.builder().method(createStatement).build();
+
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+
+        assertThat(calls).containsExactly(
+                "first:beforeMethod", "first:beforeCreateStatement", "third:beforeMethod",
+                "first:afterCreateStatement", "first:afterMethod", "second:afterCreateStatement");
+
+        calls.clear();
+        Method close = Connection.class.getMethod("close");
+        executionInfo = MockMethodExecutionInfo.builder().method(close).build();
+
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+
+        assertThat(calls).containsExactly("first:beforeMethod", "third:beforeMethod", "first:afterMethod");
+    }
+
+    @Test
+    void queryCallbacks() {
+        List<String> calls = new ArrayList<>();
+        CompositeExecutionListener listener = CompositeExecutionListener.builder()
+                .listener(new ProxyMethodExecutionListener() {
+                    @Override
+                    public void beforeExecuteOnStatement(QueryExecutionInfo executionInfo) {
+                        calls.add("first:beforeExecuteOnStatement");
+                    }
+
+                    @Override
+                    public void afterExecuteOnBatch(QueryExecutionInfo executionInfo) {
+                        calls.add("first:afterExecuteOnBatch");
+                    }
+
+                    @Override
+                    public void afterQuery(QueryExecutionInfo executionInfo) {
+                        calls.add("first:afterQuery");
+                    }
+                })
+                .listener(new ProxyExecutionListener() {
+                    @Override
+                    public void eachQueryResult(QueryExecutionInfo execInfo) {
+                        calls.add("second:eachQueryResult");
+                    }
+                })
+                .onAfterQuery(executionInfo -> calls.add("onAfterQuery"))
+                .build();
+
+        MockQueryExecutionInfo statement = MockQueryExecutionInfo.builder().type(ExecutionType.STATEMENT).build();
+        listener.beforeQuery(statement);
+        listener.eachQueryResult(statement);
+        listener.afterQuery(statement);
+
+        assertThat(calls).containsExactly(
+                "first:beforeExecuteOnStatement", "second:eachQueryResult", "first:afterQuery", "onAfterQuery");
+
+        calls.clear();
+        MockQueryExecutionInfo batch = MockQueryExecutionInfo.builder().type(ExecutionType.BATCH).build();
+        listener.beforeQuery(batch);
+        listener.afterQuery(batch);
+
+        assertThat(calls).containsExactly("first:afterExecuteOnBatch", "first:afterQuery", "onAfterQuery");
+    }
+
+    @Test
+    void noCallbacks() throws Exception {
+        CompositeExecutionListener listener = CompositeExecutionListener.builder()
+                .listener(new ProxyMethodExecutionListener() {
+                })
+                .build();
+
+        Method close = Connection.class.getMethod("close");
+        MockMethodExecutionInfo executionInfo = MockMethodExecutionInfo.builder().method(close).build();
+
+        // no exception
+        listener.beforeMethod(executionInfo);
+        listener.afterMethod(executionInfo);
+        listener.beforeQuery(MockQueryExecutionInfo.builder().type(ExecutionType.STATEMENT).build());
+        listener.afterQuery(MockQueryExecutionInfo.builder().type(ExecutionType.BATCH).build());
+    }
+
+}
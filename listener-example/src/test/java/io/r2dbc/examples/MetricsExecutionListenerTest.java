@@ -4,17 +4,26 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Meter;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.r2dbc.proxy.core.DefaultValueStore;
+import io.r2dbc.proxy.core.ExecutionType;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
 import io.r2dbc.proxy.core.ValueStore;
 import io.r2dbc.proxy.test.MockMethodExecutionInfo;
 import io.r2dbc.proxy.test.MockQueryExecutionInfo;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 /**
  * Test for {@link MetricsExecutionListener}.
@@ -49,6 +58,63 @@ class MetricsExecutionListenerTest {
                 });
     }
 
+    @Test
+    void connectionTimerDistribution() {
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setPercentiles(0.5, 0.99);
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        this.listener.setConnectionTimerDistribution(distribution);
+
+        ValueStore valueStore = new DefaultValueStore();
+        MockMethodExecutionInfo executionInfo = MockMethodExecutionInfo.builder().valueStore(valueStore).build();
+
+        this.listener.beforeCreateOnConnectionFactory(executionInfo);
+        this.listener.afterCreateOnConnectionFactory(executionInfo);
+
+        HistogramSnapshot snapshot = this.registry.get("r2dbc.connection").timer().takeSnapshot();
+        assertThat(snapshot.histogramCounts())
+                .extracting(countAtBucket -> countAtBucket.bucket(TimeUnit.MILLISECONDS))
+                .containsExactly(100.0, 500.0);
+        assertThat(snapshot.percentileValues())
+                .extracting(ValueAtPercentile::percentile)
+                .containsExactly(0.5, 0.99);
+    }
+
+    @Test
+    void connectionTimerDistributionAfterConnection() {
+        ValueStore valueStore = new DefaultValueStore();
+        MockMethodExecutionInfo executionInfo = MockMethodExecutionInfo.builder().valueStore(valueStore).build();
+
+        this.listener.beforeCreateOnConnectionFactory(executionInfo);
+        this.listener.afterCreateOnConnectionFactory(executionInfo);
+
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        this.listener.setConnectionTimerDistribution(distribution);
+
+        this.listener.beforeCreateOnConnectionFactory(executionInfo);
+        this.listener.afterCreateOnConnectionFactory(executionInfo);
+
+        Timer timer = this.registry.get("r2dbc.connection").timer();
+        assertThat(timer.count()).as("registered again").isEqualTo(1);
+        assertThat(timer.takeSnapshot().histogramCounts())
+                .extracting(countAtBucket -> countAtBucket.bucket(TimeUnit.MILLISECONDS))
+                .containsExactly(100.0, 500.0);
+    }
+
+    @Test
+    void connectionTimerDistributionWithCacheMeters() {
+        this.listener.setCacheMeters(true);
+
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        this.listener.setConnectionTimerDistribution(distribution);
+
+        assertThat(this.registry.get("r2dbc.connection").timer().takeSnapshot().histogramCounts())
+                .extracting(countAtBucket -> countAtBucket.bucket(TimeUnit.MILLISECONDS))
+                .containsExactly(100.0, 500.0);
+    }
+
     @Test
     void commit() {
         MockMethodExecutionInfo executionInfo = MockMethodExecutionInfo.empty();
@@ -107,4 +173,133 @@ class MetricsExecutionListenerTest {
                 });
     }
 
+    @Test
+    void queryDuration() {
+        this.listener.setRecordQueryDuration(true);
+        assertThat(this.registry.find("r2dbc.query.duration").timers()).as("registered upfront").hasSize(4);
+
+        MockQueryExecutionInfo statementSuccess = MockQueryExecutionInfo.builder()
+                .type(ExecutionType.STATEMENT)
+                .isSuccess(true)
+                .executeDuration(Duration.ofMillis(100))
+                .build();
+        MockQueryExecutionInfo batchFailure = MockQueryExecutionInfo.builder()
+                .type(ExecutionType.BATCH)
+                .isSuccess(false)
+                .executeDuration(Duration.ofMillis(200))
+                .build();
+
+        this.listener.afterExecuteOnStatement(statementSuccess);
+        this.listener.afterExecuteOnStatement(statementSuccess);
+        this.listener.afterExecuteOnBatch(batchFailure);
+
+        Timer timer = this.registry.get("r2dbc.query.duration").tags("type", "statement", "outcome", "success").timer();
+        assertThat(timer.count()).isEqualTo(2);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(200);
+
+        timer = this.registry.get("r2dbc.query.duration").tags("type", "batch", "outcome", "failure").timer();
+        assertThat(timer.count()).isEqualTo(1);
+        assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(200);
+
+        assertThat(this.registry.get("r2dbc.query.duration").tags("type", "statement", "outcome", "failure").timer().count()).isEqualTo(0);
+        assertThat(this.registry.get("r2dbc.query.duration").tags("type", "batch", "outcome", "success").timer().count()).isEqualTo(0);
+    }
+
+    @Test
+    void queryTimerDistribution() {
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        this.listener.setQueryTimerDistribution(distribution);
+        this.listener.setRecordQueryDuration(true);
+
+        MockQueryExecutionInfo statementSuccess = MockQueryExecutionInfo.builder()
+                .type(ExecutionType.STATEMENT)
+                .isSuccess(true)
+                .executeDuration(Duration.ofMillis(200))
+                .build();
+        this.listener.afterExecuteOnStatement(statementSuccess);
+
+        HistogramSnapshot snapshot = this.registry.get("r2dbc.query.duration").tags("type", "statement", "outcome", "success").timer().takeSnapshot();
+        assertThat(snapshot.histogramCounts())
+                .extracting(countAtBucket -> countAtBucket.bucket(TimeUnit.MILLISECONDS), CountAtBucket::count)
+                .containsExactly(tuple(100.0, 0.0), tuple(500.0, 1.0));
+    }
+
+    @Test
+    void queryTimerDistributionAfterRegistration() {
+        this.listener.setRecordQueryDuration(true);
+
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        this.listener.setQueryTimerDistribution(distribution);
+
+        assertThat(this.registry.find("r2dbc.query.duration").timers()).hasSize(4)
+                .allSatisfy(timer -> assertThat(timer.takeSnapshot().histogramCounts()).hasSize(2));
+    }
+
+    @Test
+    void cacheMeters() {
+        this.listener.setCacheMeters(true);
+
+        assertThat(this.registry.getMeters()).as("meters are registered upfront").hasSize(5);
+
+        MockQueryExecutionInfo executionInfo = MockQueryExecutionInfo.empty();
+        this.listener.afterExecuteOnStatement(executionInfo);
+        this.listener.afterExecuteOnBatch(executionInfo);
+        this.listener.afterCommitTransactionOnConnection(MockMethodExecutionInfo.empty());
+
+        assertThat(this.registry.getMeters()).hasSize(5);
+        assertThat(this.registry.get("r2dbc.query").counter().count()).isEqualTo(2);
+        assertThat(this.registry.get("r2dbc.transaction").tag("event", "commit").counter().count()).isEqualTo(1);
+        assertThat(this.registry.get("r2dbc.transaction").tag("event", "rollback").counter().count()).isEqualTo(0);
+    }
+
+    @Test
+    void cacheMetersWithPrefixChange() {
+        this.listener.setCacheMeters(true);
+        this.listener.setMetricNamePrefix("foo.");
+
+        this.listener.afterExecuteOnStatement(MockQueryExecutionInfo.empty());
+
+        assertThat(this.registry.get("foo.query").counter().count()).isEqualTo(1);
+        assertThat(this.registry.getMeters()).as("meters with the previous prefix are removed")
+                .allSatisfy(meter -> assertThat(meter.getId().getName()).startsWith("foo."));
+    }
+
+    @Test
+    void queryDurationWithPrefixChange() {
+        this.listener.setRecordQueryDuration(true);
+        this.listener.setMetricNamePrefix("foo.");
+
+        assertThat(this.registry.find("r2dbc.query.duration").timers()).isEmpty();
+        assertThat(this.registry.find("foo.query.duration").timers()).hasSize(4);
+    }
+
+    @Test
+    void setRegistryWithCachedMeters() {
+        this.listener.setCacheMeters(true);
+        this.listener.setRecordQueryDuration(true);
+
+        SimpleMeterRegistry newRegistry = new SimpleMeterRegistry();
+        this.listener.setRegistry(newRegistry);
+
+        assertThat(this.registry.getMeters()).as("removed from the previous registry").isEmpty();
+        assertThat(newRegistry.getMeters()).hasSize(9);
+    }
+
+    @Test
+    void slowQuery() {
+        List<QueryExecutionInfo> logged = new ArrayList<>();
+        MetricsExecutionListener listener = new MetricsExecutionListener(this.registry, Duration.ofMillis(100));
+        listener.setSlowQueryLogger(logged::add);
+
+        MockQueryExecutionInfo fast = MockQueryExecutionInfo.builder().executeDuration(Duration.ofMillis(10)).build();
+        MockQueryExecutionInfo slow = MockQueryExecutionInfo.builder().executeDuration(Duration.ofMillis(200)).build();
+        listener.afterExecuteOnStatement(fast);
+        listener.afterExecuteOnStatement(slow);
+
+        assertThat(logged).containsExactly(slow);
+        assertThat(this.registry.get("r2dbc.query.slow").counter().count()).isEqualTo(1);
+    }
+
 }
@@ -0,0 +1,229 @@
+package io.r2dbc.examples;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.examples.QueryFingerprintMetricsExecutionListener.DefaultQueryFingerprinter;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.core.QueryInfo;
+import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.ArgumentsProvider;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+/**
+ * Test for {@link QueryFingerprintMetricsExecutionListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class QueryFingerprintMetricsExecutionListenerTest {
+
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private QueryFingerprintMetricsExecutionListener listener = new QueryFingerprintMetricsExecutionListener(this.registry);
+
+    @ParameterizedTest
+    @ArgumentsSource(FingerprintArgumentsProvider.class)
+    void fingerprint(String query, String expected) {
+        assertThat(new DefaultQueryFingerprinter().fingerprint(query)).isEqualTo(expected);
+    }
+
+    @Test
+    void timerPerFingerprint() {
+        this.listener.setMinCount(2);
+
+        executeQuery("SELECT * FROM test WHERE id = 1");
+        executeQuery("SELECT * FROM test WHERE id = 2");
+        executeQuery("SELECT * FROM test WHERE id = 3");
+
+        Timer timer = this.registry.get("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM test WHERE id = ?").timer();
+        assertThat(timer.count()).as("first execution is recorded as other").isEqualTo(2);
+
+        Timer other = this.registry.get("r2dbc.query.fingerprint").tag("fingerprint", "other").timer();
+        assertThat(other.count()).isEqualTo(1);
+    }
+
+    @Test
+    void maxFingerprints() {
+        this.listener.setMinCount(1);
+        this.listener.setMaxFingerprints(2);
+
+        for (int i = 0; i < 5; i++) {
+            executeQuery("SELECT * FROM table" + i);
+        }
+
+        assertThat(this.registry.get("r2dbc.query.fingerprint").timers()).hasSize(3);
+        Timer other = this.registry.get("r2dbc.query.fingerprint").tag("fingerprint", "other").timer();
+        assertThat(other.count()).isEqualTo(3);
+    }
+
+    @Test
+    void rotateToCurrentTopFingerprints() {
+        this.listener.setMinCount(1);
+        this.listener.setMaxFingerprints(2);
+
+        // take the slots during warm-up
+        executeQuery("SELECT * FROM table0");
+        executeQuery("SELECT * FROM table0");
+        executeQuery("SELECT * FROM table1");
+        for (int i = 0; i < 5; i++) {
+            executeQuery("SELECT * FROM table2");
+        }
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table2").timer())
+                .as("no free slot before rotation").isNull();
+
+        this.listener.rotate();
+
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table2").timer()).isNotNull();
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table0").timer()).isNotNull();
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table1").timer())
+                .as("cold fingerprint is removed").isNull();
+
+        executeQuery("SELECT * FROM table2");
+        assertThat(this.registry.get("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table2").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rotateDecaysCounts() {
+        this.listener.setMinCount(4);
+
+        for (int i = 0; i < 3; i++) {
+            executeQuery("SELECT * FROM table0");
+        }
+        this.listener.rotate();
+
+        // decayed to 1, and 3 more executions reach "minCount"
+        executeQuery("SELECT * FROM table0");
+        executeQuery("SELECT * FROM table0");
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table0").timer()).isNull();
+        executeQuery("SELECT * FROM table0");
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table0").timer()).isNotNull();
+    }
+
+    @Test
+    void maxCandidates() {
+        this.listener.setMinCount(2);
+        this.listener.setMaxCandidates(2);
+
+        executeQuery("SELECT * FROM table0");
+        executeQuery("SELECT * FROM table0");
+        executeQuery("SELECT * FROM table1");
+        executeQuery("SELECT * FROM table2");
+        executeQuery("SELECT * FROM table2");
+
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table2").timer())
+                .as("not counted when candidates are full").isNull();
+
+        // rotation is brought forward, and keeps the most executed one
+        executeQuery("SELECT * FROM table2");
+        executeQuery("SELECT * FROM table2");
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table0").timer()).isNotNull();
+        assertThat(this.registry.find("r2dbc.query.fingerprint").tag("fingerprint", "SELECT * FROM table2").timer()).isNotNull();
+    }
+
+    @Test
+    void setMetricNamePrefix() {
+        this.listener.setMinCount(1);
+        executeQuery("SELECT * FROM test");
+
+        this.listener.setMetricNamePrefix("my.");
+        executeQuery("SELECT * FROM test");
+
+        assertThat(this.registry.find("r2dbc.query.fingerprint").timers()).as("timers with previous prefix are removed").isEmpty();
+        assertThat(this.registry.get("my.query.fingerprint").tag("fingerprint", "SELECT * FROM test").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void maxTagLength() {
+        this.listener.setMinCount(1);
+        this.listener.setMaxTagLength(15);
+
+        executeQuery("SELECT * FROM test");
+
+        String expected = String.format("SELECT~%08x", "SELECT * FROM test".hashCode());
+        assertThat(this.registry.get("r2dbc.query.fingerprint").tag("fingerprint", expected).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void maxTagLengthWithSharedPrefix() {
+        this.listener.setMinCount(1);
+        this.listener.setMaxTagLength(20);
+
+        executeQuery("SELECT * FROM test WHERE id = 1");
+        executeQuery("SELECT * FROM test WHERE id = 1");
+        executeQuery("SELECT * FROM test WHERE name = 'foo'");
+
+        // distinct tags for fingerprints sharing the truncated prefix
+        assertThat(this.registry.find("r2dbc.query.fingerprint").timers()).hasSize(2)
+                .extracting(timer -> timer.getId().getTag("fingerprint"))
+                .allSatisfy(tag -> assertThat(tag).hasSize(20).startsWith("SELECT * FR~"))
+                .doesNotHaveDuplicates();
+
+        // rotate out the "id" fingerprint
+        for (int i = 0; i < 3; i++) {
+            executeQuery("SELECT * FROM test WHERE name = 'foo'");
+        }
+        this.listener.setMinCount(3);
+        this.listener.rotate();
+        assertThat(this.registry.find("r2dbc.query.fingerprint").timers()).hasSize(1);
+
+        // the timer of the fingerprint that is still in the top stays registered
+        Timer timer = this.registry.get("r2dbc.query.fingerprint")
+                .tag("fingerprint", toTagValue("SELECT * FROM test WHERE name = ?", 20)).timer();
+        executeQuery("SELECT * FROM test WHERE name = 'foo'");
+        assertThat(timer.count()).isEqualTo(5);
+    }
+
+    @Test
+    void maxTagLengthShorterThanHashSuffix() {
+        assertThatIllegalArgumentException().isThrownBy(() -> this.listener.setMaxTagLength(9));
+    }
+
+    private static String toTagValue(String fingerprint, int maxTagLength) {
+        return fingerprint.substring(0, maxTagLength - 9) + String.format("~%08x", fingerprint.hashCode());
+    }
+
+    private void executeQuery(String query) {
+        QueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .queryInfo(new QueryInfo(query))
+                .executeDuration(Duration.ofMillis(10))
+                .build();
+        this.listener.afterQuery(queryExecutionInfo);
+    }
+
+    private static class FingerprintArgumentsProvider implements ArgumentsProvider {
+
+        @Override
+        public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
+            return Stream.of(
+                    // query, fingerprint
+                    arguments("SELECT 1", "SELECT ?"),
+                    arguments("SELECT * FROM test WHERE name = 'foo'", "SELECT * FROM test WHERE name = ?"),
+                    arguments("SELECT * FROM test WHERE name = 'it''s'", "SELECT * FROM test WHERE name = ?"),
+                    arguments("SELECT * FROM test WHERE value > 1.5", "SELECT * FROM test WHERE value > ?"),
+                    arguments("SELECT * FROM test WHERE id = $1", "SELECT * FROM test WHERE id = ?"),
+                    arguments("SELECT * FROM test WHERE id = :id", "SELECT * FROM test WHERE id = ?"),
+                    arguments("SELECT * FROM test WHERE id = @id", "SELECT * FROM test WHERE id = ?"),
+                    arguments("SELECT * FROM test WHERE id = ?", "SELECT * FROM test WHERE id = ?"),
+                    arguments("SELECT * FROM test WHERE id IN (1, 2, 3)", "SELECT * FROM test WHERE id IN (?)"),
+                    arguments("SELECT * FROM test WHERE id IN ($1,$2)", "SELECT * FROM test WHERE id IN (?)"),
+                    arguments("INSERT INTO test VALUES ('a', 1)", "INSERT INTO test VALUES (?)"),
+                    arguments("SELECT value::text FROM test", "SELECT value::text FROM test"),
+                    arguments("SELECT \"column1\" FROM table1", "SELECT \"column1\" FROM table1"),
+                    arguments("  SELECT\n  *\n\tFROM   test  ", "SELECT * FROM test"),
+                    arguments("-- comment\nSELECT /* inline */ 1", "SELECT ?"),
+                    arguments(null, "")
+            );
+        }
+    }
+
+}
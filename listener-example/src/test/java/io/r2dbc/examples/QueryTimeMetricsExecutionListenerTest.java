@@ -1,10 +1,13 @@
 package io.r2dbc.examples;
 
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.r2dbc.proxy.core.QueryExecutionInfo;
 import io.r2dbc.proxy.core.QueryInfo;
 import io.r2dbc.proxy.test.MockQueryExecutionInfo;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -16,6 +19,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 /**
@@ -44,6 +48,101 @@ class QueryTimeMetricsExecutionListenerTest {
         assertThat(select.totalTime(TimeUnit.SECONDS)).isEqualTo(10);
     }
 
+    @Test
+    void batch() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryTimeMetricsExecutionListener listener = new QueryTimeMetricsExecutionListener(registry);
+
+        QueryExecutionInfo queryExecutionInfo = new MockQueryExecutionInfo.Builder()
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (2)"))
+                .queryInfo(new QueryInfo("UPDATE test SET value = 3"))
+                .executeDuration(Duration.ofSeconds(10))
+                .build();
+
+        listener.afterQuery(queryExecutionInfo);
+
+        assertThat(registry.get("r2dbc.query.insert").timer().count()).isEqualTo(2);
+        assertThat(registry.get("r2dbc.query.update").timer().count()).isEqualTo(1);
+        assertThat(registry.find("r2dbc.query.select").timer()).as("registered on first use").isNull();
+    }
+
+    @Test
+    void metricNamePrefix() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryTimeMetricsExecutionListener listener = new QueryTimeMetricsExecutionListener(registry);
+        listener.setMetricNamePrefix("foo.");
+
+        QueryExecutionInfo queryExecutionInfo = new MockQueryExecutionInfo.Builder()
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .executeDuration(Duration.ofSeconds(10))
+                .build();
+
+        listener.afterQuery(queryExecutionInfo);
+
+        assertThat(registry.get("foo.query.select").timer().count()).isEqualTo(1);
+        assertThat(registry.find("r2dbc.query.select").timer()).isNull();
+    }
+
+    @Test
+    void metricNamePrefixAfterRecording() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryTimeMetricsExecutionListener listener = new QueryTimeMetricsExecutionListener(registry);
+
+        QueryExecutionInfo queryExecutionInfo = new MockQueryExecutionInfo.Builder()
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .executeDuration(Duration.ofSeconds(10))
+                .build();
+
+        listener.afterQuery(queryExecutionInfo);
+        listener.setMetricNamePrefix("foo.");
+        listener.afterQuery(queryExecutionInfo);
+
+        assertThat(registry.get("foo.query.select").timer().count()).isEqualTo(1);
+        assertThat(registry.find("r2dbc.query.select").timers()).as("timers with previous prefix are removed").isEmpty();
+    }
+
+    @Test
+    void setRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SimpleMeterRegistry newRegistry = new SimpleMeterRegistry();
+        QueryTimeMetricsExecutionListener listener = new QueryTimeMetricsExecutionListener(registry);
+
+        QueryExecutionInfo queryExecutionInfo = new MockQueryExecutionInfo.Builder()
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .executeDuration(Duration.ofSeconds(10))
+                .build();
+
+        listener.afterQuery(queryExecutionInfo);
+        listener.setRegistry(newRegistry);
+        listener.afterQuery(queryExecutionInfo);
+
+        assertThat(registry.getMeters()).isEmpty();
+        assertThat(newRegistry.get("r2dbc.query.select").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void timerDistribution() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QueryTimeMetricsExecutionListener listener = new QueryTimeMetricsExecutionListener(registry);
+
+        TimerDistribution distribution = new TimerDistribution();
+        distribution.setServiceLevelObjectives(Duration.ofMillis(100), Duration.ofMillis(500));
+        listener.setTimerDistribution(distribution);
+
+        QueryExecutionInfo queryExecutionInfo = new MockQueryExecutionInfo.Builder()
+                .queryInfo(new QueryInfo("SELECT 1"))
+                .executeDuration(Duration.ofMillis(200))
+                .build();
+
+        listener.afterQuery(queryExecutionInfo);
+
+        HistogramSnapshot snapshot = registry.get("r2dbc.query.select").timer().takeSnapshot();
+        assertThat(snapshot.histogramCounts())
+                .extracting(countAtBucket -> countAtBucket.bucket(TimeUnit.MILLISECONDS), CountAtBucket::count)
+                .containsExactly(tuple(100.0, 0.0), tuple(500.0, 1.0));
+    }
+
     private static class MetricsArgumentsProvider implements ArgumentsProvider {
 
         @Override
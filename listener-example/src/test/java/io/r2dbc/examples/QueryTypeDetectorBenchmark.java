@@ -0,0 +1,90 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.DefaultQueryTypeDetector;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryType;
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryTypeDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link QueryTypeDetector} implementations.
+ * <p>
+ * Run {@link #main(String[])} from IDE. To see allocation per call, add
+ * {@code addProfiler(GCProfiler.class)} to the options.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryTypeDetectorBenchmark {
+
+	private static final String[] QUERIES = {
+			"SELECT id, name, value FROM test WHERE id = $1",
+			"INSERT INTO test (id, name, value) VALUES ($1, $2, $3)",
+			"UPDATE test SET value = $1 WHERE id = $2",
+			"-- delete by id\nDELETE FROM test WHERE id = $1",
+			"/* find all */ SELECT id, name, value FROM test ORDER BY id",
+			"/*\n * find recent values\n */\nWITH recent AS (SELECT id, value FROM test WHERE id > $1)\nSELECT * FROM recent",
+	};
+
+	private QueryTypeDetector defaultDetector;
+
+	private QueryTypeDetector scanningDetector;
+
+	private QueryTypeDetector cachingDetector;
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		this.defaultDetector = new DefaultQueryTypeDetector();
+		this.scanningDetector = new ScanningQueryTypeDetector();
+		this.cachingDetector = new CachingQueryTypeDetector(new DefaultQueryTypeDetector());
+	}
+
+	private String nextQuery() {
+		this.index = (this.index + 1) % QUERIES.length;
+		return QUERIES[this.index];
+	}
+
+	@Benchmark
+	public QueryType defaultDetector() {
+		return this.defaultDetector.detect(nextQuery());
+	}
+
+	@Benchmark
+	public QueryType scanningDetector() {
+		return this.scanningDetector.detect(nextQuery());
+	}
+
+	@Benchmark
+	public QueryType cachingDetector() {
+		return this.cachingDetector.detect(nextQuery());
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(QueryTypeDetectorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,68 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.examples.QueryTimeMetricsExecutionListener.QueryType;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.ArgumentsProvider;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+/**
+ * Test for {@link ScanningQueryTypeDetector}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class ScanningQueryTypeDetectorTest {
+
+    private ScanningQueryTypeDetector detector = new ScanningQueryTypeDetector();
+
+    @ParameterizedTest
+    @ArgumentsSource(QueryArgumentsProvider.class)
+    void detect(String query, QueryType expected) {
+        assertThat(this.detector.detect(query)).isEqualTo(expected);
+    }
+
+    private static class QueryArgumentsProvider implements ArgumentsProvider {
+
+        @Override
+        public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
+            return Stream.of(
+                    // query, expected type
+                    arguments("SELECT 1", QueryType.SELECT),
+                    arguments("select * from test", QueryType.SELECT),
+                    arguments("INSERT INTO test VALUES (1)", QueryType.INSERT),
+                    arguments("update test set value = 1", QueryType.UPDATE),
+                    arguments("DELETE FROM test", QueryType.DELETE),
+                    arguments("  \n\t SELECT 1", QueryType.SELECT),
+                    arguments("-- comment\nSELECT 1", QueryType.SELECT),
+                    arguments("-- comment\n-- another\n  INSERT INTO test VALUES (1)", QueryType.INSERT),
+                    arguments("/* comment */ UPDATE test SET value = 1", QueryType.UPDATE),
+                    arguments("/* multi\n line\n comment */\nDELETE FROM test", QueryType.DELETE),
+                    arguments("/* outer /* nested */ still comment */ SELECT 1", QueryType.SELECT),
+                    arguments("(SELECT 1) UNION (SELECT 2)", QueryType.SELECT),
+                    arguments("WITH t AS (SELECT 1) SELECT * FROM t", QueryType.SELECT),
+                    arguments("WITH RECURSIVE t(n) AS (VALUES (1) UNION ALL SELECT n + 1 FROM t) SELECT n FROM t", QueryType.SELECT),
+                    arguments("with a as (select 1), b as (select 2) insert into test select * from a", QueryType.INSERT),
+                    arguments("WITH deleted AS (DELETE FROM test RETURNING *) SELECT count(*) FROM deleted", QueryType.SELECT),
+                    arguments("WITH t AS (SELECT ')' AS v) UPDATE test SET value = 1", QueryType.UPDATE),
+                    arguments("WITH t AS (SELECT 1) MERGE INTO test USING t ON (1 = 1)", QueryType.OTHER),
+                    arguments("VALUES (1), (2)", QueryType.SELECT),
+                    arguments("MERGE INTO test USING src ON (test.id = src.id)", QueryType.OTHER),
+                    arguments("UPSERT INTO test VALUES (1)", QueryType.OTHER),
+                    arguments("CALL SLEEP(700)", QueryType.OTHER),
+                    arguments("SELECTED", QueryType.OTHER),
+                    arguments("UPDATES", QueryType.OTHER),
+                    arguments("-- only comment", QueryType.OTHER),
+                    arguments("/* unterminated comment SELECT 1", QueryType.OTHER),
+                    arguments("", QueryType.OTHER),
+                    arguments(null, QueryType.OTHER)
+            );
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package io.r2dbc.examples;
+
+import io.r2dbc.proxy.callback.ProxyConfig;
+import io.r2dbc.proxy.core.MethodExecutionInfo;
+import io.r2dbc.proxy.core.QueryExecutionInfo;
+import io.r2dbc.proxy.listener.ProxyMethodExecutionListener;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Statement;
+import io.r2dbc.spi.Wrapped;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test for {@link SpringAopProxyFactory}.
+ *
+ * @author Tadaya Tsuyukubo
+ */
+class SpringAopProxyFactoryTest {
+
+    private List<String> calls = new ArrayList<>();
+
+    private Statement statement = mock(Statement.class, RETURNS_SELF);
+
+    private Connection connection = mock(Connection.class);
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void callbacks(boolean precompute) {
+        Connection proxyConnection = createProxyConnection(proxyFactory -> proxyFactory.setPrecomputeProxyConfiguration(precompute));
+        assertThat(proxyConnection).isInstanceOf(Wrapped.class);
+        assertThat(((Wrapped<?>) proxyConnection).unwrap()).isSameAs(this.connection);
+
+        this.calls.clear();
+        Statement proxyStatement = proxyConnection.createStatement("SELECT 1");
+        assertThat(proxyStatement).isNotSameAs(this.statement).isInstanceOf(Wrapped.class);
+        assertThat(this.calls).containsExactly("beforeMethod:createStatement", "beforeCreateStatementOnConnection",
+                "afterCreateStatementOnConnection", "afterMethod:createStatement");
+
+        this.calls.clear();
+        Flux.from(proxyStatement.execute()).blockLast();
+        assertThat(this.calls).containsExactly("beforeMethod:execute", "beforeExecuteOnStatement",
+                "afterMethod:execute", "afterExecuteOnStatement");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void excludeBindMethods(boolean precompute) {
+        Connection proxyConnection = createProxyConnection(proxyFactory -> {
+            proxyFactory.setPrecomputeProxyConfiguration(precompute);
+            proxyFactory.setInterceptedMethodMatcher(SpringAopProxyFactory.EXCLUDE_BIND_METHODS);
+        });
+
+        // not excluded methods are still intercepted
+        this.calls.clear();
+        Statement proxyStatement = proxyConnection.createStatement("SELECT 1");
+        assertThat(proxyStatement).isNotSameAs(this.statement);
+        assertThat(this.calls).containsExactly("beforeMethod:createStatement", "beforeCreateStatementOnConnection",
+                "afterCreateStatementOnConnection", "afterMethod:createStatement");
+
+        // excluded methods are invoked on the target, and return the proxy instead of the target
+        this.calls.clear();
+        Statement bound = proxyStatement.bind("$1", 100).bindNull("$2", String.class);
+        assertThat(bound).isSameAs(proxyStatement);
+        verify(this.statement).bind("$1", 100);
+        verify(this.statement).bindNull("$2", String.class);
+        assertThat(this.calls).isEmpty();
+
+        // following "execute" is still intercepted
+        Flux.from(bound.execute()).blockLast();
+        assertThat(this.calls).containsExactly("beforeMethod:execute", "beforeExecuteOnStatement",
+                "afterMethod:execute", "afterExecuteOnStatement");
+
+        // "Wrapped" methods are always intercepted
+        assertThat(((Wrapped<?>) bound).unwrap()).isSameAs(this.statement);
+    }
+
+    private Connection createProxyConnection(Consumer<SpringAopProxyFactory> customizer) {
+        doReturn(Flux.empty()).when(this.statement).execute();
+        when(this.connection.createStatement("SELECT 1")).thenReturn(this.statement);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        doReturn(Mono.just(this.connection)).when(connectionFactory).create();
+
+        ProxyConfig proxyConfig = ProxyConfig.builder()
+                .listener(new RecordingListener(this.calls))
+                .proxyFactoryFactory(config -> {
+                    SpringAopProxyFactory proxyFactory = new SpringAopProxyFactory(config);
+                    customizer.accept(proxyFactory);
+                    return proxyFactory;
+                })
+                .build();
+
+        ConnectionFactory proxyConnectionFactory = proxyConfig.getProxyFactory().wrapConnectionFactory(connectionFactory);
+        return Mono.from(proxyConnectionFactory.create()).block();
+    }
+
+    private static class RecordingListener implements ProxyMethodExecutionListener {
+
+        private final List<String> calls;
+
+        RecordingListener(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void beforeMethod(MethodExecutionInfo executionInfo) {
+            this.calls.add("beforeMethod:" + executionInfo.getMethod().getName());
+        }
+
+        @Override
+        public void afterMethod(MethodExecutionInfo executionInfo) {
+            this.calls.add("afterMethod:" + executionInfo.getMethod().getName());
+        }
+
+        @Override
+        public void beforeCreateStatementOnConnection(MethodExecutionInfo executionInfo) {
+            this.calls.add("beforeCreateStatementOnConnection");
+        }
+
+        @Override
+        public void afterCreateStatementOnConnection(MethodExecutionInfo executionInfo) {
+            this.calls.add("afterCreateStatementOnConnection");
+        }
+
+        @Override
+        public void beforeExecuteOnStatement(QueryExecutionInfo queryExecutionInfo) {
+            this.calls.add("beforeExecuteOnStatement");
+        }
+
+        @Override
+        public void afterExecuteOnStatement(QueryExecutionInfo queryExecutionInfo) {
+            this.calls.add("afterExecuteOnStatement");
+        }
+    }
+
+}
@@ -4,7 +4,9 @@ import brave.Span;
 import brave.Tracer;
 import brave.Tracing;
 import brave.propagation.StrictCurrentTraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
 import brave.test.TestSpanHandler;
+import io.r2dbc.examples.TracingExecutionListener.FetchTiming;
 import io.r2dbc.proxy.core.ConnectionInfo;
 import io.r2dbc.proxy.core.ExecutionType;
 import io.r2dbc.proxy.core.QueryInfo;
@@ -18,6 +20,7 @@ import org.junit.jupiter.api.Test;
 import static io.r2dbc.examples.TracingExecutionListener.CONNECTION_SPAN_KEY;
 import static io.r2dbc.examples.TracingExecutionListener.TRANSACTION_SPAN_KEY;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 
 /**
  * Test for {@link TracingExecutionListener}.
@@ -71,6 +74,175 @@ class TracingExecutionListenerTest {
         ;
     }
 
+    @Test
+    void queryWithMaxQueryTagLength() {
+        this.listener.setMaxQueryTagLength(20);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (2)"))
+                .type(ExecutionType.BATCH)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeQuery(queryExecutionInfo);
+        this.listener.afterQuery(queryExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        assertThat(this.spanHandler.get(0).tags())
+                .containsEntry("queries", "INSERT INTO test ...");
+    }
+
+    @Test
+    void queryWithMaxQueryTagLengthNotExceeded() {
+        this.listener.setMaxQueryTagLength(27);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .type(ExecutionType.STATEMENT)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeQuery(queryExecutionInfo);
+        this.listener.afterQuery(queryExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        assertThat(this.spanHandler.get(0).tags())
+                .containsEntry("queries", "INSERT INTO test VALUES (1)");
+    }
+
+    @Test
+    void queryWithBatchQueryFingerprintAndMaxQueryTagLength() {
+        this.listener.setBatchQueryFingerprint(true);
+        this.listener.setMaxQueryTagLength(40);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (2)"))
+                .queryInfo(new QueryInfo("UPDATE test SET value = 3"))
+                .type(ExecutionType.BATCH)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeQuery(queryExecutionInfo);
+        this.listener.afterQuery(queryExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        String queries = this.spanHandler.get(0).tags().get("queries");
+        assertThat(queries).isEqualTo("INSERT INTO test VALUES (?) (x2), UPD...").hasSize(40);
+    }
+
+    @Test
+    void maxQueryTagLengthShorterThanSuffix() {
+        assertThatIllegalArgumentException().isThrownBy(() -> this.listener.setMaxQueryTagLength(3));
+    }
+
+    @Test
+    void queryWithBatchQueryFingerprint() {
+        this.listener.setBatchQueryFingerprint(true);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (2)"))
+                .queryInfo(new QueryInfo("UPDATE test SET value = 3"))
+                .type(ExecutionType.BATCH)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeQuery(queryExecutionInfo);
+        this.listener.afterQuery(queryExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        assertThat(this.spanHandler.get(0).tags())
+                .containsEntry("queries", "INSERT INTO test VALUES (?) (x2), UPDATE test SET value = ? (x1)");
+    }
+
+    @Test
+    void queryNotSampled() {
+        this.listener.setBatchQueryFingerprint(true);
+        this.listener.setQueryFingerprinter(query -> {
+            throw new AssertionError("should not build queries tag");
+        });
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("INSERT INTO test VALUES (1)"))
+                .type(ExecutionType.BATCH)
+                .build();
+
+        Span notSampled = this.tracer.nextSpan(TraceContextOrSamplingFlags.NOT_SAMPLED);
+        try (Tracer.SpanInScope ws = this.tracer.withSpanInScope(notSampled)) {
+            this.listener.beforeQuery(queryExecutionInfo);
+            this.listener.afterQuery(queryExecutionInfo);
+        }
+
+        assertThat(this.spanHandler.spans()).isEmpty();
+    }
+
+    @Test
+    void queryWithFetchTiming() {
+        this.listener.setFetchTiming(true);
+
+        MockQueryExecutionInfo queryExecutionInfo = MockQueryExecutionInfo.builder()
+                .connectionInfo(MockConnectionInfo.builder().connectionId("foo").valueStore(ValueStore.create()).build())
+                .queryInfo(new QueryInfo("SELECT value FROM test"))
+                .type(ExecutionType.STATEMENT)
+                .isSuccess(true)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeQuery(queryExecutionInfo);
+        this.listener.eachQueryResult(queryExecutionInfo);
+        this.listener.eachQueryResult(queryExecutionInfo);
+        this.listener.eachQueryResult(queryExecutionInfo);
+        this.listener.afterQuery(queryExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        assertThat(this.spanHandler.get(0).tags())
+                .containsEntry("rowCount", "3")
+                .containsKeys("timeToFirstRowMicros", "fetchTimeMicros",
+                        "interRowP50Micros", "interRowP99Micros", "interRowMaxMicros");
+        assertThat(this.spanHandler.get(0).containsAnnotation("First row")).isTrue();
+    }
+
+    @Test
+    void fetchTimingPercentiles() {
+        Span span = this.tracer.nextSpan().start();
+        FetchTiming fetchTiming = new FetchTiming(span, 0);
+
+        long nanos = 1_000;
+        fetchTiming.onRow(nanos);
+        for (int i = 0; i < 98; i++) {
+            nanos += 100;  // bucket [64, 128)
+            fetchTiming.onRow(nanos);
+        }
+        nanos += 5_000;  // bucket [4096, 8192)
+        fetchTiming.onRow(nanos);
+        span.finish();
+
+        assertThat(fetchTiming.getRowCount()).isEqualTo(100);
+        assertThat(fetchTiming.getInterRowPercentileNanos(0.5)).isEqualTo(127);
+        assertThat(fetchTiming.getInterRowPercentileNanos(0.98)).isEqualTo(127);
+        assertThat(fetchTiming.getInterRowPercentileNanos(0.99)).as("capped by max").isEqualTo(5_000);
+    }
+
+    @Test
+    void fetchTimingWithNonMonotonicClock() {
+        Span span = this.tracer.nextSpan().start();
+        FetchTiming fetchTiming = new FetchTiming(span, 0);
+
+        fetchTiming.onRow(1_000);
+        fetchTiming.onRow(900);  // clock went backward
+        span.finish();
+
+        assertThat(fetchTiming.getRowCount()).isEqualTo(2);
+        assertThat(fetchTiming.getInterRowPercentileNanos(0.5)).isEqualTo(0);
+    }
+
     @Test
     void createConnection() {
         ValueStore valueStore = ValueStore.create();
@@ -104,6 +276,37 @@ class TracingExecutionListenerTest {
         assertThat(this.spanHandler.get(0).containsAnnotation("Connection created")).isTrue();
     }
 
+    @Test
+    void createConnectionNotSampled() {
+        ValueStore valueStore = ValueStore.create();
+        ValueStore methodValueStore = ValueStore.create();
+        ConnectionInfo connectionInfo = MockConnectionInfo.builder()
+                .connectionId("foo")
+                .valueStore(valueStore)
+                .build();
+        MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder()
+                .connectionInfo(connectionInfo)
+                .valueStore(methodValueStore)
+                .build();
+
+        Span notSampled = this.tracer.nextSpan(TraceContextOrSamplingFlags.NOT_SAMPLED);
+        try (Tracer.SpanInScope ws = this.tracer.withSpanInScope(notSampled)) {
+            this.listener.beforeCreateOnConnectionFactory(methodExecutionInfo);
+            this.listener.afterCreateOnConnectionFactory(methodExecutionInfo);
+            this.listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+        }
+
+        assertThat(methodValueStore.get("initialConnectionSpan")).isNull();
+        assertThat(valueStore.get(CONNECTION_SPAN_KEY)).isNull();
+        assertThat(valueStore.get(TRANSACTION_SPAN_KEY)).isNull();
+
+        // following callbacks do nothing
+        this.listener.afterRollbackTransactionOnConnection(methodExecutionInfo);
+        this.listener.afterCloseOnConnection(methodExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).isEmpty();
+    }
+
     @Test
     void createConnectionWithError() {
         Exception error = new RuntimeException();
@@ -234,6 +437,7 @@ class TracingExecutionListenerTest {
                 .containsEntry("threadId", "10")
         ;
         assertThat(this.spanHandler.get(0).containsAnnotation("Commit")).isTrue();
+        assertThat(valueStore.get(TRANSACTION_SPAN_KEY)).as("finished transaction span should be removed").isNull();
 
         // check connSpan
         this.spanHandler.clear();
@@ -270,6 +474,7 @@ class TracingExecutionListenerTest {
                 .containsEntry("threadId", "10")
         ;
         assertThat(this.spanHandler.get(0).containsAnnotation("Rollback")).isTrue();
+        assertThat(valueStore.get(TRANSACTION_SPAN_KEY)).as("finished transaction span should be removed").isNull();
 
         // check connSpan
         this.spanHandler.clear();
@@ -278,4 +483,41 @@ class TracingExecutionListenerTest {
         assertThat(this.spanHandler.get(0).containsAnnotation("Transaction rollback")).isTrue();
     }
 
+    @Test
+    void sampledTransactionThenNotSampledTransaction() {
+        ValueStore valueStore = ValueStore.create();
+        ConnectionInfo connectionInfo = MockConnectionInfo.builder()
+                .connectionId("foo")
+                .valueStore(valueStore)
+                .build();
+        MockMethodExecutionInfo methodExecutionInfo = MockMethodExecutionInfo.builder()
+                .connectionInfo(connectionInfo)
+                .threadName("thread-name")
+                .build();
+
+        this.listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+        this.listener.afterCommitTransactionOnConnection(methodExecutionInfo);
+
+        assertThat(this.spanHandler.spans()).hasSize(1);
+        assertThat(this.spanHandler.get(0).containsAnnotation("Commit")).isTrue();
+        assertThat(valueStore.get(TRANSACTION_SPAN_KEY)).isNull();
+
+        // stale span from the previous transaction
+        Span staleSpan = this.tracer.nextSpan().name("stale").start();
+        valueStore.put(TRANSACTION_SPAN_KEY, staleSpan);
+
+        Span notSampled = this.tracer.nextSpan(TraceContextOrSamplingFlags.NOT_SAMPLED);
+        try (Tracer.SpanInScope ws = this.tracer.withSpanInScope(notSampled)) {
+            this.listener.beforeBeginTransactionOnConnection(methodExecutionInfo);
+            assertThat(valueStore.get(TRANSACTION_SPAN_KEY)).as("stale span should be removed").isNull();
+            this.listener.afterRollbackTransactionOnConnection(methodExecutionInfo);
+        }
+
+        // the not sampled transaction does not touch the span of the previous transaction
+        staleSpan.finish();
+        assertThat(this.spanHandler.spans()).hasSize(2);
+        assertThat(this.spanHandler.get(1).name()).isEqualTo("stale");
+        assertThat(this.spanHandler.get(1).containsAnnotation("Rollback")).isFalse();
+    }
+
 }